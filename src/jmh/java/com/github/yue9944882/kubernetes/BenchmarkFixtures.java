@@ -0,0 +1,189 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.common.KubernetesObject;
+import io.kubernetes.client.informer.ListerWatcher;
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.impl.DefaultSharedIndexInformer;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.models.*;
+import io.kubernetes.client.util.CallGeneratorParams;
+import io.kubernetes.client.util.Watchable;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.lang.reflect.Field;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+// Synthetic replicasets/pods and in-memory wiring shared by the benchmarks.
+class BenchmarkFixtures {
+
+    static final String NAMESPACE = "bench";
+
+    static final int REPLICA_SETS_PER_NAMESPACE = 100;
+
+    private static final OffsetDateTime EPOCH = OffsetDateTime.parse("2020-01-01T00:00:00Z");
+
+    static List<V1ReplicaSet> replicaSets(int count) {
+        List<V1ReplicaSet> replicaSets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = "rs-" + i;
+            Map<String, String> templateLabels = new HashMap<>();
+            templateLabels.put("app", name);
+            templateLabels.put("tier", "bench");
+            replicaSets.add(new V1ReplicaSet()
+                    .apiVersion("apps/v1")
+                    .kind("ReplicaSet")
+                    .metadata(new V1ObjectMeta()
+                            .namespace(NAMESPACE)
+                            .name(name)
+                            .uid("uid-" + name)
+                            .generation(1L))
+                    .spec(new V1ReplicaSetSpec()
+                            .replicas(0)
+                            .selector(new V1LabelSelector().matchLabels(Collections.singletonMap("app", name)))
+                            .template(new V1PodTemplateSpec()
+                                    .metadata(new V1ObjectMeta().labels(templateLabels))
+                                    .spec(new V1PodSpec().containers(Collections.singletonList(
+                                            new V1Container().name("nginx").image("nginx:1.7.9"))))))
+                    .status(new V1ReplicaSetStatus()
+                            .replicas(0)
+                            .fullyLabeledReplicas(0)
+                            .readyReplicas(0)
+                            .availableReplicas(0)
+                            .observedGeneration(1L)));
+        }
+        return replicaSets;
+    }
+
+    // spreads the pods evenly over the replicasets. ownedRatio of the pods are controlled by their
+    // replicaset, the rest are orphans of which half match the selector of the replicaset (adoptable)
+    // and half don't. one out of ten pods of each replicaset is pending and unscheduled. the replicas of each replicaset
+    // are set to the number of pods it claims, and its status to the status calculated from them, so that
+    // reconciling it is a steady-state sync neither creating/deleting pods nor writing the status.
+    static List<V1Pod> pods(List<V1ReplicaSet> replicaSets, int count, double ownedRatio) {
+        Random random = new Random(count);
+        List<V1Pod> pods = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            V1ReplicaSet rs = replicaSets.get(i % replicaSets.size());
+            // the index of the pod within its replicaset.
+            int index = i / replicaSets.size();
+            boolean claimed = true;
+            boolean ready = index % 10 != 0;
+            V1Pod pod = new V1Pod()
+                    .metadata(new V1ObjectMeta()
+                            .namespace(NAMESPACE)
+                            .name(rs.getMetadata().getName() + "-" + i)
+                            .uid("uid-pod-" + i)
+                            .resourceVersion(String.valueOf(i))
+                            .creationTimestamp(EPOCH.plusSeconds(i)))
+                    .spec(new V1PodSpec())
+                    .status(new V1PodStatus());
+            if (random.nextDouble() < ownedRatio) {
+                pod.getMetadata()
+                        .labels(new HashMap<>(rs.getSpec().getTemplate().getMetadata().getLabels()))
+                        .ownerReferences(Collections.singletonList(new V1OwnerReference()
+                                .apiVersion("apps/v1")
+                                .kind("ReplicaSet")
+                                .name(rs.getMetadata().getName())
+                                .uid(rs.getMetadata().getUid())
+                                .controller(true)));
+                // only the controlled pods carry every template label.
+                rs.getStatus().fullyLabeledReplicas(rs.getStatus().getFullyLabeledReplicas() + 1);
+            } else if (random.nextBoolean()) {
+                pod.getMetadata().labels(new HashMap<>(rs.getSpec().getSelector().getMatchLabels()));
+            } else {
+                pod.getMetadata().labels(Collections.singletonMap("app", "unrelated-" + i));
+                claimed = false;
+            }
+            if (claimed) {
+                rs.getSpec().replicas(rs.getSpec().getReplicas() + 1);
+                rs.getStatus().replicas(rs.getStatus().getReplicas() + 1);
+                if (ready) {
+                    // available right away as the min-ready-seconds is unset.
+                    rs.getStatus()
+                            .readyReplicas(rs.getStatus().getReadyReplicas() + 1)
+                            .availableReplicas(rs.getStatus().getAvailableReplicas() + 1);
+                }
+            }
+            if (!ready) {
+                pod.getStatus().phase("Pending");
+            } else {
+                pod.getSpec().nodeName("node-" + (index % 50));
+                pod.getStatus()
+                        .phase("Running")
+                        .conditions(Collections.singletonList(new V1PodCondition()
+                                .type("Ready")
+                                .status("True")
+                                .lastTransitionTime(EPOCH.plusSeconds(i))));
+            }
+            pods.add(pod);
+        }
+        return pods;
+    }
+
+    // an informer that is never started, the objects are put into its indexer directly.
+    static <ApiType extends KubernetesObject> SharedIndexInformer<ApiType> informer(Class<ApiType> apiTypeClass) {
+        return new DefaultSharedIndexInformer<>(apiTypeClass, new ListerWatcher<ApiType, V1PodList>() {
+            @Override
+            public V1PodList list(CallGeneratorParams params) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Watchable<ApiType> watch(CallGeneratorParams params) {
+                throw new UnsupportedOperationException();
+            }
+        }, 0);
+    }
+
+    // an api-client answering every request locally with an empty object, so that the benchmarks
+    // measure the controller rather than the network.
+    static ApiClient stubApiClient() {
+        return stubApiClient("{\"metadata\":{}}");
+    }
+
+    static ApiClient stubApiClient(String responseBody) {
+        return stubApiClient(responseBody, request -> {
+        });
+    }
+
+    // the requests are passed to onRequest before being answered, e.g. for applying them to the listers.
+    static ApiClient stubApiClient(String responseBody, Consumer<Request> onRequest) {
+        ApiClient apiClient = new ApiClient();
+        apiClient.setBasePath("http://stub.invalid");
+        apiClient.setHttpClient(apiClient.getHttpClient().newBuilder()
+                .addInterceptor(chain -> {
+                    onRequest.accept(chain.request());
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code("POST".equals(chain.request().method()) ? 201 : 200)
+                            .message("OK")
+                            .body(ResponseBody.create(MediaType.parse("application/json"), responseBody))
+                            .build();
+                })
+                .build());
+        return apiClient;
+    }
+
+    // the reconciler is field-injected by spring in production.
+    static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("failed injecting " + fieldName, e);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.yue9944882.kubernetes;
+
+import com.github.yue9944882.kubernetes.config.ControllerProperties;
+import io.kubernetes.client.extended.controller.reconciler.Request;
+import io.kubernetes.client.extended.controller.reconciler.Result;
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.cache.Indexer;
+import io.kubernetes.client.informer.cache.Lister;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.apis.AppsV1Api;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1OwnerReference;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1ReplicaSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Benchmarks a steady-state reconcile of one replicaset against in-memory listers filled with
+// synthetic pods, the api calls are answered by a stubbed api-client. the replicas and the status of the
+// replicasets match the pods, so no pod is created/deleted and the status isn't written. the stub applies
+// the adoptions to the pod lister as the watch would, and the adoptable orphans are adopted during the
+// setup, so the measured reconciles don't send any api call.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FullReconcileBenchmark {
+
+    // the number of pods in the namespace.
+    @Param({"1000", "10000", "100000"})
+    public int podCount;
+
+    // the ratio of pods controlled by a replicaset, the rest are orphans. the adoptable ones are
+    // owned by the time of the measurement, the others stay in the namespace.
+    @Param({"1.0", "0.5"})
+    public double ownedRatio;
+
+    // compares the indexed pod lookup against the namespace scan.
+    @Param({"true", "false"})
+    public boolean indexedPodLookup;
+
+    private ReplicaSetReconciler reconciler;
+
+    private ExecutorService podControlExecutor;
+
+    private HashedWheelScheduler<Request> availabilityRequeueScheduler;
+
+    private Request request;
+
+    @Setup
+    public void setup() {
+        List<V1ReplicaSet> replicaSets = BenchmarkFixtures.replicaSets(BenchmarkFixtures.REPLICA_SETS_PER_NAMESPACE);
+        List<V1Pod> pods = BenchmarkFixtures.pods(replicaSets, podCount, ownedRatio);
+
+        SharedIndexInformer<V1Pod> podInformer = BenchmarkFixtures.informer(V1Pod.class);
+        Map<String, Function<V1Pod, List<String>>> podIndexers = new HashMap<>();
+        podIndexers.put(PodIndexers.CONTROLLER_UID_INDEX, PodIndexers.controllerUidIndexFunc);
+        podIndexers.put(PodIndexers.ORPHAN_LABEL_INDEX, PodIndexers.orphanLabelIndexFunc);
+        podInformer.addIndexers(podIndexers);
+        pods.forEach(podInformer.getIndexer()::add);
+        SharedIndexInformer<V1ReplicaSet> rsInformer = BenchmarkFixtures.informer(V1ReplicaSet.class);
+        replicaSets.forEach(rsInformer.getIndexer()::add);
+
+        ControllerProperties controllerProperties = new ControllerProperties();
+        controllerProperties.setIndexedPodLookup(indexedPodLookup);
+        podControlExecutor = Executors.newFixedThreadPool(controllerProperties.getPodControlParallelism());
+
+        reconciler = new ReplicaSetReconciler();
+        BenchmarkFixtures.inject(reconciler, "podLister", new Lister<>(podInformer.getIndexer()));
+        BenchmarkFixtures.inject(reconciler, "podInformer", podInformer);
+        BenchmarkFixtures.inject(reconciler, "rsLister", new Lister<>(rsInformer.getIndexer()));
+        BenchmarkFixtures.inject(reconciler, "rsInformer", rsInformer);
+        // answering the recheck of the replicaset before adopting.
+        String rsUid = replicaSets.get(0).getMetadata().getUid();
+        ApiClient apiClient = BenchmarkFixtures.stubApiClient(
+                "{\"metadata\":{\"uid\":\"" + rsUid + "\"}}",
+                apiRequest -> applyAdoption(apiRequest, podInformer.getIndexer()));
+        BenchmarkFixtures.inject(reconciler, "apiClient", apiClient);
+        BenchmarkFixtures.inject(reconciler, "coreV1Api", new CoreV1Api(apiClient));
+        BenchmarkFixtures.inject(reconciler, "appsV1Api", new AppsV1Api(apiClient));
+        BenchmarkFixtures.inject(reconciler, "controllerProperties", controllerProperties);
+        BenchmarkFixtures.inject(reconciler, "controllerExpectations", new ControllerExpectations(controllerProperties.getExpectationsTimeout()));
+        BenchmarkFixtures.inject(reconciler, "controllerMetrics", new ControllerMetrics(new SimpleMeterRegistry()));
+        BenchmarkFixtures.inject(reconciler, "apiCallExecutor", new ApiCallExecutor(
+                apiClient,
+                false,
+                podControlExecutor,
+                controllerProperties.getMaxRequestsInFlight(),
+                controllerProperties.getApiRequestTimeout()));
+        BenchmarkFixtures.inject(reconciler, "selectorCache", new ReplicaSetSelectorCache());
+        BenchmarkFixtures.inject(reconciler, "shardCoordinator", new ShardCoordinator(
+                false, BenchmarkFixtures.stubApiClient(), "default", "bench", "bench", Duration.ofSeconds(15), Duration.ofSeconds(5)));
+        availabilityRequeueScheduler = new HashedWheelScheduler<>(Duration.ofMillis(100), 512, r -> {
+        });
+        BenchmarkFixtures.inject(reconciler, "availabilityRequeueScheduler", availabilityRequeueScheduler);
+        request = new Request(BenchmarkFixtures.NAMESPACE, replicaSets.get(0).getMetadata().getName());
+        // adopting the adoptable orphans.
+        reconciler.reconcile(request);
+    }
+
+    @TearDown
+    public void tearDown() {
+        podControlExecutor.shutdown();
+        availabilityRequeueScheduler.shutdown();
+    }
+
+    @Benchmark
+    public Result reconcile() {
+        return reconciler.reconcile(request);
+    }
+
+    // applies an adoption patch to the pod informer's cache, as the watch would.
+    private static void applyAdoption(okhttp3.Request apiRequest, Indexer<V1Pod> podIndexer) {
+        String podsPath = "/api/v1/namespaces/" + BenchmarkFixtures.NAMESPACE + "/pods/";
+        String path = apiRequest.url().encodedPath();
+        if (!"PATCH".equals(apiRequest.method()) || !path.startsWith(podsPath)) {
+            return;
+        }
+        V1Pod pod = podIndexer.getByKey(Utils.getKey(BenchmarkFixtures.NAMESPACE, path.substring(podsPath.length())));
+        if (pod == null || Utils.getReplicaSetControllerOwnerRef(pod) != null) {
+            return;
+        }
+        // the pods are named after their replicaset.
+        String rsName = pod.getMetadata().getName().substring(0, pod.getMetadata().getName().lastIndexOf('-'));
+        podIndexer.update(new V1Pod()
+                .metadata(new V1ObjectMeta()
+                        .namespace(pod.getMetadata().getNamespace())
+                        .name(pod.getMetadata().getName())
+                        .uid(pod.getMetadata().getUid())
+                        .resourceVersion(pod.getMetadata().getResourceVersion() + "-adopted")
+                        .creationTimestamp(pod.getMetadata().getCreationTimestamp())
+                        .labels(pod.getMetadata().getLabels())
+                        .ownerReferences(Collections.singletonList(new V1OwnerReference()
+                                .apiVersion("apps/v1")
+                                .kind("ReplicaSet")
+                                .name(rsName)
+                                .uid("uid-" + rsName)
+                                .controller(true)
+                                .blockOwnerDeletion(true))))
+                .spec(pod.getSpec())
+                .status(pod.getStatus()));
+    }
+}
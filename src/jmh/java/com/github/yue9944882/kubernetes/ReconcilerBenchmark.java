@@ -0,0 +1,99 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.extended.controller.reconciler.Request;
+import io.kubernetes.client.openapi.models.V1OwnerReference;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1ReplicaSet;
+import io.kubernetes.client.openapi.models.V1ReplicaSetStatus;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Benchmarks of the steps of a reconcile against the pods of one namespace.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReconcilerBenchmark {
+
+    // the number of pods in the namespace.
+    @Param({"1000", "10000", "100000"})
+    public int podCount;
+
+    // the ratio of pods controlled by a replicaset, the rest are orphans.
+    @Param({"1.0", "0.5"})
+    public double ownedRatio;
+
+    private V1ReplicaSet rs;
+
+    private ReplicaSetSelectorCache selectorCache;
+
+    private PodSelector selector;
+
+    private List<V1Pod> pods;
+
+    private List<V1Pod> claimedPods;
+
+    private ReplicaSetReconciler reconciler;
+
+    private PodWorkQueueKeyFunc podWorkQueueKeyFunc;
+
+    @Setup
+    public void setup() {
+        List<V1ReplicaSet> replicaSets = BenchmarkFixtures.replicaSets(BenchmarkFixtures.REPLICA_SETS_PER_NAMESPACE);
+        pods = BenchmarkFixtures.pods(replicaSets, podCount, ownedRatio);
+        rs = replicaSets.get(0);
+        selectorCache = new ReplicaSetSelectorCache();
+        selector = selectorCache.get(rs).getSelector();
+        // as if the adoptions succeeded.
+        List<V1Pod> adoptions = new ArrayList<>();
+        claimedPods = ReplicaSetReconciler.claimPods(rs, selector, ReplicaSetReconciler.filterActivePods(pods), adoptions, new ArrayList<>());
+        claimedPods.addAll(adoptions);
+        reconciler = new ReplicaSetReconciler();
+        podWorkQueueKeyFunc = new PodWorkQueueKeyFunc();
+    }
+
+    @Benchmark
+    public List<V1Pod> filterActivePods() {
+        return ReplicaSetReconciler.filterActivePods(pods);
+    }
+
+    @Benchmark
+    public ReplicaSetSelectorCache.Entry selectorCacheHit() {
+        return selectorCache.get(rs);
+    }
+
+    @Benchmark
+    public List<V1Pod> claimPods() {
+        return ReplicaSetReconciler.claimPods(rs, selector, pods, new ArrayList<>(), new ArrayList<>());
+    }
+
+    @Benchmark
+    public V1ReplicaSetStatus calculateStatus() {
+        return reconciler.calculateStatus(rs, claimedPods, selectorCache.get(rs).getTemplateLabelsMatcher(), null, OffsetDateTime.now());
+    }
+
+    @Benchmark
+    public void getReplicaSetControllerOwnerRef(Blackhole blackhole) {
+        for (V1Pod pod : pods) {
+            V1OwnerReference ref = Utils.getReplicaSetControllerOwnerRef(pod);
+            blackhole.consume(ref);
+        }
+    }
+
+    @Benchmark
+    public void podWorkQueueKeyFunc(Blackhole blackhole) {
+        for (V1Pod pod : claimedPods) {
+            if (Utils.getReplicaSetControllerOwnerRef(pod) != null) {
+                Request request = podWorkQueueKeyFunc.apply(pod);
+                blackhole.consume(request);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.github.yue9944882.kubernetes;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.models.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drives the controller wired by {@link com.github.yue9944882.kubernetes.config.ControllerConfiguration} against
+// a {@link FakeApiServer} seeded with replicasets of no pods, until every replicaset is converged, i.e. its
+// status reports all the desired replicas as ready for its latest generation. reports the time-to-converge,
+// the api calls per converged replicaset and the peak heap.
+//
+// the harness options are "--harness.<option>=<value>", every other argument is passed to spring, e.g.
+// "--replicaset-controller.api-mode=async".
+public class ScaleHarness {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> springArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--harness.") && arg.contains("=")) {
+                options.put(arg.substring("--harness.".length(), arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                springArgs.add(arg);
+            }
+        }
+        int replicaSets = Integer.parseInt(options.getOrDefault("replicasets", "10000"));
+        int replicas = Integer.parseInt(options.getOrDefault("replicas", "50"));
+        int namespaces = Integer.parseInt(options.getOrDefault("namespaces", "100"));
+        Duration latency = Duration.parse(options.getOrDefault("latency", "PT0S"));
+        double errorRate = Double.parseDouble(options.getOrDefault("error-rate", "0"));
+        int historyLimit = Integer.parseInt(options.getOrDefault("history-limit", "100000"));
+        Duration timeout = Duration.parse(options.getOrDefault("timeout", "PT30M"));
+
+        FakeApiServer apiServer = new FakeApiServer(latency, errorRate, historyLimit);
+        for (int i = 0; i < replicaSets; i++) {
+            apiServer.create("replicasets", replicaSet("harness-" + (i % namespaces), "rs-" + i, replicas));
+        }
+        System.out.printf("seeded %d replicasets of %d replicas in %d namespaces, latency %s, error rate %s%n",
+                replicaSets, replicas, namespaces, latency, errorRate);
+
+        HeapPeak heapPeak = new HeapPeak();
+        long start = System.nanoTime();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .initializers(fakeApiClient(apiServer.apiClient()))
+                .run(springArgs.toArray(new String[0]));
+        int converged = 0;
+        long deadline = start + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            converged = countConverged(apiServer.list("replicasets"));
+            if (converged == replicaSets) {
+                break;
+            }
+            System.out.printf("%6ds: %d/%d replicasets converged, %d pods%n",
+                    Duration.ofNanos(System.nanoTime() - start).getSeconds(), converged, replicaSets, apiServer.list("pods").size());
+            Thread.sleep(1000);
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        long peakHeap = heapPeak.stop();
+        context.close();
+
+        Map<String, Long> requestCounts = apiServer.getRequestCounts();
+        long requests = requestCounts.values().stream().mapToLong(Long::longValue).sum();
+        System.out.printf("converged %d/%d replicasets in %.1fs%n", converged, replicaSets, elapsed.toMillis() / 1000.0);
+        System.out.printf("api calls: %d (%.2f per converged replicaset) %s%n",
+                requests, converged == 0 ? 0.0 : (double) requests / converged, requestCounts);
+        System.out.printf("peak heap: %d MiB%n", peakHeap >> 20);
+        System.exit(converged == replicaSets ? 0 : 1);
+    }
+
+    // tracks the peak of the used heap as a whole. the pools peak at different times, e.g. the young
+    // generation right before a collection moves it into the old one, so the sum of their peaks overstates
+    // it. the usage right before every collection is the peak since the previous one, the periodic samples
+    // cover the heap growing without a collection.
+    private static class HeapPeak implements NotificationListener {
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        private final List<NotificationEmitter> collectors = new ArrayList<>();
+
+        private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heap-peak-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private final AtomicLong peak = new AtomicLong();
+
+        private HeapPeak() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter) {
+                    ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+                    collectors.add((NotificationEmitter) collector);
+                }
+            }
+            sampler.scheduleAtFixedRate(() -> record(memory.getHeapMemoryUsage().getUsed()), 0, 100, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            long used = 0;
+            for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+                if (isHeapPool(pool.getKey())) {
+                    used += pool.getValue().getUsed();
+                }
+            }
+            record(used);
+        }
+
+        private void record(long used) {
+            peak.accumulateAndGet(used, Math::max);
+        }
+
+        private long stop() throws Exception {
+            sampler.shutdownNow();
+            for (NotificationEmitter collector : collectors) {
+                collector.removeNotificationListener(this);
+            }
+            record(memory.getHeapMemoryUsage().getUsed());
+            return peak.get();
+        }
+
+        private static boolean isHeapPool(String name) {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getName().equals(name)) {
+                    return pool.getType() == MemoryType.HEAP;
+                }
+            }
+            return false;
+        }
+    }
+
+    // registers the api-client of the fake api-server as the primary one, so that it's picked over the
+    // default client by the informers and the reconciler.
+    private static ApplicationContextInitializer<GenericApplicationContext> fakeApiClient(ApiClient apiClient) {
+        return context -> context.registerBean("fakeApiClient", ApiClient.class, () -> apiClient, definition -> definition.setPrimary(true));
+    }
+
+    private static V1ReplicaSet replicaSet(String namespace, String name, int replicas) {
+        Map<String, String> labels = Collections.singletonMap("app", name);
+        return new V1ReplicaSet()
+                .apiVersion("apps/v1")
+                .kind("ReplicaSet")
+                .metadata(new V1ObjectMeta()
+                        .namespace(namespace)
+                        .name(name))
+                .spec(new V1ReplicaSetSpec()
+                        .replicas(replicas)
+                        .selector(new V1LabelSelector().matchLabels(labels))
+                        .template(new V1PodTemplateSpec()
+                                .metadata(new V1ObjectMeta().labels(labels))
+                                .spec(new V1PodSpec().containers(Collections.singletonList(
+                                        new V1Container().name("nginx").image("nginx:1.7.9"))))));
+    }
+
+    private static int countConverged(List<JsonObject> replicaSets) {
+        int converged = 0;
+        for (JsonObject rs : replicaSets) {
+            long desired = rs.getAsJsonObject("spec").get("replicas").getAsLong();
+            long generation = rs.getAsJsonObject("metadata").get("generation").getAsLong();
+            JsonObject status = rs.getAsJsonObject("status");
+            if (status != null
+                    && count(status.get("replicas")) == desired
+                    && count(status.get("readyReplicas")) == desired
+                    && count(status.get("observedGeneration")) >= generation) {
+                converged++;
+            }
+        }
+        return converged;
+    }
+
+    private static long count(JsonElement counter) {
+        return counter == null || counter.isJsonNull() ? 0 : counter.getAsLong();
+    }
+}
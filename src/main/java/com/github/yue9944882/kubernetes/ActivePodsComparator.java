@@ -0,0 +1,80 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.openapi.models.V1ContainerStatus;
+import io.kubernetes.client.openapi.models.V1Pod;
+
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+
+// Orders the pods by how cheap they are to delete, the cheapest first:
+//  1. unscheduled < scheduled
+//  2. Pending < Unknown < Running
+//  3. not-ready < ready
+//  4. more restarts < fewer restarts
+//  5. newer < older
+// see the original go code at:
+// https://github.com/kubernetes/kubernetes/blob/master/pkg/controller/controller_utils.go
+public class ActivePodsComparator implements Comparator<V1Pod> {
+
+    public static final ActivePodsComparator INSTANCE = new ActivePodsComparator();
+
+    @Override
+    public int compare(V1Pod p1, V1Pod p2) {
+        boolean scheduled1 = isScheduled(p1);
+        boolean scheduled2 = isScheduled(p2);
+        if (scheduled1 != scheduled2) {
+            return scheduled1 ? 1 : -1;
+        }
+        int phase1 = phaseOrdinal(p1.getStatus().getPhase());
+        int phase2 = phaseOrdinal(p2.getStatus().getPhase());
+        if (phase1 != phase2) {
+            return Integer.compare(phase1, phase2);
+        }
+        boolean ready1 = Utils.isPodReady(p1);
+        boolean ready2 = Utils.isPodReady(p2);
+        if (ready1 != ready2) {
+            return ready1 ? 1 : -1;
+        }
+        int restarts1 = maxContainerRestarts(p1);
+        int restarts2 = maxContainerRestarts(p2);
+        if (restarts1 != restarts2) {
+            return Integer.compare(restarts2, restarts1);
+        }
+        OffsetDateTime created1 = p1.getMetadata().getCreationTimestamp();
+        OffsetDateTime created2 = p2.getMetadata().getCreationTimestamp();
+        if (created1 == null || created2 == null) {
+            // the pod missing the creation-timestamp goes first.
+            return created1 == null ? (created2 == null ? 0 : -1) : 1;
+        }
+        return created2.compareTo(created1);
+    }
+
+    private static boolean isScheduled(V1Pod pod) {
+        return pod.getSpec() != null && pod.getSpec().getNodeName() != null && !pod.getSpec().getNodeName().isEmpty();
+    }
+
+    private static int maxContainerRestarts(V1Pod pod) {
+        int restarts = 0;
+        if (pod.getStatus().getContainerStatuses() != null) {
+            for (V1ContainerStatus status : pod.getStatus().getContainerStatuses()) {
+                if (status.getRestartCount() != null) {
+                    restarts = Math.max(restarts, status.getRestartCount());
+                }
+            }
+        }
+        return restarts;
+    }
+
+    private static int phaseOrdinal(String phase) {
+        if ("Pending".equals(phase)) {
+            return 0;
+        }
+        if ("Unknown".equals(phase)) {
+            return 1;
+        }
+        if ("Running".equals(phase)) {
+            return 2;
+        }
+        return 3;
+    }
+}
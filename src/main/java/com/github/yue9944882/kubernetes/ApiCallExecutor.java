@@ -0,0 +1,176 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.openapi.ApiCallback;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.ApiException;
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// Executes the api calls of the reconciler, the calls are built by the generated "*Call" methods of the apis.
+//
+// in the blocking mode, a call occupies a thread of the given executor for its whole round-trip. in the async
+// mode, the call is enqueued to the okhttp dispatcher and completes on its callback, so that a handful of
+// threads keep many calls in flight. the calls beyond the in-flight bound are parked and sent as the calls
+// in flight complete, nothing ever blocks in the sending thread, which may be the callback thread of the
+// previous call continuing e.g. the next slow-start batch. blocking there would hold the dispatcher slot the
+// parked calls wait for. instead, the reconcile workers wait in {@link #awaitCapacity} before starting a
+// replicaset, so that the work-queue isn't drained into an unbounded backlog of parked calls.
+public class ApiCallExecutor {
+
+    private final ApiClient apiClient;
+
+    private final boolean async;
+
+    private final Executor blockingExecutor;
+
+    private final int maxRequestsInFlight;
+
+    // the calls waiting for an in-flight permit, guarded by this.
+    private final Deque<Runnable> parked = new ArrayDeque<>();
+
+    // guarded by this.
+    private int inFlight;
+
+    private final Duration requestTimeout;
+
+    public ApiCallExecutor(ApiClient apiClient, boolean async, Executor blockingExecutor, int maxRequestsInFlight, Duration requestTimeout) {
+        this.apiClient = apiClient;
+        this.async = async;
+        this.blockingExecutor = blockingExecutor;
+        this.maxRequestsInFlight = maxRequestsInFlight;
+        this.requestTimeout = requestTimeout;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    // waits while the parked calls fill up another round of the in-flight bound. only for the callers
+    // starting new work, e.g. the reconcile workers, never for the continuations of the calls.
+    public synchronized void awaitCapacity() {
+        try {
+            while (parked.size() >= maxRequestsInFlight) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // executes the call and decodes the response into the return type, the response is discarded
+    // if the return type is null. the future completes exceptionally with the ApiException upon failure.
+    public <T> CompletableFuture<T> execute(CallFactory callFactory, Type returnType) {
+        return execute(callFactory, null, returnType);
+    }
+
+    // executes the patch call with the content-type of the patch format, like {@link io.kubernetes.client.util.PatchUtils}.
+    public <T> CompletableFuture<T> patch(CallFactory callFactory, String patchFormat, Type returnType) {
+        return execute(callFactory, patchFormat, returnType);
+    }
+
+    private <T> CompletableFuture<T> execute(CallFactory callFactory, String patchFormat, Type returnType) {
+        if (!async) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return apiClient.<T>execute(newCall(callFactory, patchFormat), returnType).getData();
+                } catch (ApiException e) {
+                    throw new CompletionException(e);
+                }
+            }, blockingExecutor);
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Call call;
+        try {
+            call = newCall(callFactory, patchFormat);
+        } catch (ApiException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        Runnable send = () -> apiClient.executeAsync(call, returnType, new ApiCallback<T>() {
+            @Override
+            public void onFailure(ApiException e, int statusCode, Map<String, List<String>> responseHeaders) {
+                release();
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onSuccess(T result, int statusCode, Map<String, List<String>> responseHeaders) {
+                release();
+                future.complete(result);
+            }
+
+            @Override
+            public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {
+            }
+
+            @Override
+            public void onDownloadProgress(long bytesRead, long contentLength, boolean done) {
+            }
+        });
+        synchronized (this) {
+            if (inFlight >= maxRequestsInFlight) {
+                parked.add(send);
+                return future;
+            }
+            inFlight++;
+        }
+        send.run();
+        return future;
+    }
+
+    // hands the permit of a completed call over to the next parked call, if any.
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = parked.poll();
+            if (next == null) {
+                inFlight--;
+            }
+            notifyAll();
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    private Call newCall(CallFactory callFactory, String patchFormat) throws ApiException {
+        Call call = callFactory.newCall();
+        if (patchFormat != null) {
+            // the generated call picks the first patch content-type, re-creating it with the body re-typed.
+            Request request = call.request();
+            Buffer body = new Buffer();
+            try {
+                request.body().writeTo(body);
+            } catch (IOException e) {
+                throw new ApiException(e);
+            }
+            call = apiClient.getHttpClient().newCall(request.newBuilder()
+                    .patch(RequestBody.create(MediaType.parse(patchFormat), body.readByteString()))
+                    .build());
+        }
+        // the read-timeout of the shared api-client is disabled for the informers' watches.
+        call.timeout().timeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        return call;
+    }
+
+    // builds the call by a generated "*Call" method of the apis, passing a null callback.
+    @FunctionalInterface
+    public interface CallFactory {
+        Call newCall() throws ApiException;
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.yue9944882.kubernetes;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Tracks the pod creations/deletions a replicaset is waiting to observe from the pod informer,
+// so that the reconciler doesn't act upon a stale cache and over-create/over-delete pods.
+// see the original go code at:
+// https://github.com/kubernetes/kubernetes/blob/master/pkg/controller/controller_utils.go
+public class ControllerExpectations {
+
+    private final static Logger logger = LoggerFactory.getLogger(ControllerExpectations.class);
+
+    private final ConcurrentMap<String, Expectation> expectations = new ConcurrentHashMap<>();
+
+    private final long ttlNanos;
+
+    public ControllerExpectations(Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    // returns true if the replicaset has observed all the creations/deletions it issued, or the
+    // expectations are expired, or the replicaset has never issued any creation/deletion.
+    public boolean satisfiedExpectations(String rsKey) {
+        Expectation exp = expectations.get(rsKey);
+        if (exp == null) {
+            return true;
+        }
+        if (exp.fulfilled()) {
+            return true;
+        }
+        if (System.nanoTime() - exp.timestampNanos > ttlNanos) {
+            logger.info("expectations of replicaset {} expired, pending creations {}, pending deletions {}", rsKey, exp.pendingCreations.get(), exp.pendingDeletions.size());
+            return true;
+        }
+        return false;
+    }
+
+    public void expectCreations(String rsKey, int creations) {
+        Expectation exp = new Expectation();
+        exp.pendingCreations.set(creations);
+        expectations.put(rsKey, exp);
+    }
+
+    // the deletions are tracked by pod key so that the graceful-deletion update and the final
+    // delete event of the same pod are observed only once.
+    public void expectDeletions(String rsKey, Collection<String> podKeys) {
+        Expectation exp = new Expectation();
+        exp.pendingDeletions.addAll(podKeys);
+        expectations.put(rsKey, exp);
+    }
+
+    public void creationObserved(String rsKey) {
+        Expectation exp = expectations.get(rsKey);
+        if (exp != null) {
+            exp.pendingCreations.decrementAndGet();
+        }
+    }
+
+    public void deletionObserved(String rsKey, String podKey) {
+        Expectation exp = expectations.get(rsKey);
+        if (exp != null) {
+            exp.pendingDeletions.remove(podKey);
+        }
+    }
+
+    public void deleteExpectations(String rsKey) {
+        expectations.remove(rsKey);
+    }
+
+    private static class Expectation {
+        private final AtomicInteger pendingCreations = new AtomicInteger();
+        private final Set<String> pendingDeletions = ConcurrentHashMap.newKeySet();
+        private final long timestampNanos = System.nanoTime();
+
+        private boolean fulfilled() {
+            return pendingCreations.get() <= 0 && pendingDeletions.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.common.KubernetesObject;
+import io.kubernetes.client.informer.ResourceEventHandler;
+import io.kubernetes.client.openapi.ApiException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+// Micrometer meters of the replicaset controller, scraped from the prometheus actuator endpoint.
+public class ControllerMetrics {
+
+    // the phases of a reconcile.
+    public static final String PHASE_LIST_CLAIM = "list-claim";
+    public static final String PHASE_MANAGE_REPLICAS = "manage-replicas";
+    public static final String PHASE_STATUS_WRITE = "status-write";
+
+    // the api calls issued by the reconciler.
+    public static final String API_CREATE_POD = "create-pod";
+    public static final String API_DELETE_POD = "delete-pod";
+    public static final String API_PATCH_STATUS = "patch-status";
+    public static final String API_ADOPT_POD = "adopt-pod";
+    public static final String API_RELEASE_POD = "release-pod";
+    public static final String API_GET_REPLICASET = "get-replicaset";
+
+    private final MeterRegistry registry;
+
+    private final Timer listClaimTimer;
+    private final Timer manageReplicasTimer;
+    private final Timer statusWriteTimer;
+    private final Map<PriorityRateLimitingQueue.Lane, Timer> workQueueWaitTimers = new EnumMap<>(PriorityRateLimitingQueue.Lane.class);
+    private final Counter filteredPodUpdates;
+    // the api call timers per operation, and the error counters per operation and code. registered
+    // up-front so that recording an api call doesn't look the meters up in the registry.
+    private final Map<String, Timer> apiSuccessTimers = new HashMap<>();
+    private final Map<String, Timer> apiErrorTimers = new HashMap<>();
+    private final Map<String, ConcurrentMap<String, Counter>> apiErrorCounters = new HashMap<>();
+
+    public ControllerMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.listClaimTimer = reconcileTimer(PHASE_LIST_CLAIM);
+        this.manageReplicasTimer = reconcileTimer(PHASE_MANAGE_REPLICAS);
+        this.statusWriteTimer = reconcileTimer(PHASE_STATUS_WRITE);
+        for (PriorityRateLimitingQueue.Lane lane : PriorityRateLimitingQueue.Lane.values()) {
+            this.workQueueWaitTimers.put(lane, Timer.builder("replicaset.controller.workqueue.wait")
+                    .description("time a replicaset key waits in the work-queue before being reconciled")
+                    .tag("lane", lane.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        this.filteredPodUpdates = Counter.builder("replicaset.controller.pod.updates.filtered")
+                .description("pod updates dropped because they can't affect the owning replicaset")
+                .register(registry);
+        for (String operation : new String[]{API_CREATE_POD, API_DELETE_POD, API_PATCH_STATUS, API_ADOPT_POD, API_RELEASE_POD, API_GET_REPLICASET}) {
+            this.apiSuccessTimers.put(operation, apiTimer(operation, "success"));
+            this.apiErrorTimers.put(operation, apiTimer(operation, "error"));
+            this.apiErrorCounters.put(operation, new ConcurrentHashMap<>());
+        }
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public void recordReconcilePhase(String phase, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        switch (phase) {
+            case PHASE_LIST_CLAIM:
+                listClaimTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                break;
+            case PHASE_MANAGE_REPLICAS:
+                manageReplicasTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                break;
+            case PHASE_STATUS_WRITE:
+                statusWriteTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown reconcile phase: " + phase);
+        }
+    }
+
+    public void recordWorkQueueWait(PriorityRateLimitingQueue.Lane lane, long waitNanos) {
+        workQueueWaitTimers.get(lane).record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFilteredPodUpdate() {
+        filteredPodUpdates.increment();
+    }
+
+    // records the latency of an api call, the error is null if the call succeeded.
+    public void recordApiCall(String operation, long startNanos, Throwable error) {
+        Timer timer = (error == null ? apiSuccessTimers : apiErrorTimers).get(operation);
+        if (timer == null) {
+            throw new IllegalArgumentException("unknown api operation: " + operation);
+        }
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (error != null) {
+            String code = error instanceof ApiException ? String.valueOf(((ApiException) error).getCode()) : "unknown";
+            apiErrorCounters.get(operation)
+                    .computeIfAbsent(code, c -> Counter.builder("replicaset.controller.api.errors")
+                            .description("failed api calls issued by the reconciler")
+                            .tag("operation", operation)
+                            .tag("code", c)
+                            .register(registry))
+                    .increment();
+        }
+    }
+
+    // counts the informer events of the resource per type.
+    public <ApiType extends KubernetesObject> ResourceEventHandler<ApiType> informerEventCounter(String resource) {
+        Counter adds = informerEventCounter(resource, "add");
+        Counter updates = informerEventCounter(resource, "update");
+        Counter deletes = informerEventCounter(resource, "delete");
+        return new ResourceEventHandler<ApiType>() {
+            @Override
+            public void onAdd(ApiType obj) {
+                adds.increment();
+            }
+
+            @Override
+            public void onUpdate(ApiType oldObj, ApiType newObj) {
+                updates.increment();
+            }
+
+            @Override
+            public void onDelete(ApiType obj, boolean deletedFinalStateUnknown) {
+                deletes.increment();
+            }
+        };
+    }
+
+    private Counter informerEventCounter(String resource, String type) {
+        return Counter.builder("replicaset.controller.informer.events")
+                .description("events received from the informers")
+                .tag("resource", resource)
+                .tag("type", type)
+                .register(registry);
+    }
+
+    private Timer apiTimer(String operation, String outcome) {
+        return Timer.builder("replicaset.controller.api.requests")
+                .description("latency of the api calls issued by the reconciler")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Timer reconcileTimer(String phase) {
+        return Timer.builder("replicaset.controller.reconcile")
+                .description("latency of the reconcile phases")
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.extended.workqueue.ratelimiter.RateLimiter;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// A rate-limiting work-queue serving its lanes by weighted round-robin: each round, a non-empty lane is
+// served up to its weight before the next round starts, so a lower lane is never starved by a storm in a
+// higher one. within a lane, the keys are served in FIFO order.
+//
+// like the default work-queue, a key is queued at most once and is never handed out while being processed,
+// a key added while being processed is queued again once done.
+public class DefaultPriorityRateLimitingQueue<T> implements PriorityRateLimitingQueue<T> {
+
+    private final RateLimiter<T> rateLimiter;
+
+    private final ScheduledExecutorService delayer;
+
+    private final Map<Lane, LinkedHashSet<T>> lanes = new EnumMap<>(Lane.class);
+
+    // the keys to be served, queued or being processed, and their lanes.
+    private final Map<T, Lane> dirty = new HashMap<>();
+
+    private final Set<T> processing = new HashSet<>();
+
+    // the gets left per lane in the current round.
+    private final Map<Lane, Integer> credits = new EnumMap<>(Lane.class);
+
+    private boolean shuttingDown;
+
+    public DefaultPriorityRateLimitingQueue(ScheduledExecutorService delayer, RateLimiter<T> rateLimiter) {
+        this.delayer = delayer;
+        this.rateLimiter = rateLimiter;
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new LinkedHashSet<>());
+            credits.put(lane, lane.getWeight());
+        }
+    }
+
+    @Override
+    public void add(T item) {
+        add(item, Lane.NORMAL);
+    }
+
+    @Override
+    public synchronized void add(T item, Lane lane) {
+        if (shuttingDown) {
+            return;
+        }
+        Lane current = dirty.get(item);
+        if (current != null) {
+            if (lane.compareTo(current) < 0) {
+                dirty.put(item, lane);
+                if (!processing.contains(item)) {
+                    lanes.get(current).remove(item);
+                    lanes.get(lane).add(item);
+                }
+            }
+            return;
+        }
+        dirty.put(item, lane);
+        if (processing.contains(item)) {
+            return;
+        }
+        lanes.get(lane).add(item);
+        notifyAll();
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException {
+        while (length() == 0 && !shuttingDown) {
+            wait();
+        }
+        if (length() == 0) {
+            return null;
+        }
+        Iterator<T> iterator = lanes.get(nextLane()).iterator();
+        T item = iterator.next();
+        iterator.remove();
+        dirty.remove(item);
+        processing.add(item);
+        return item;
+    }
+
+    private Lane nextLane() {
+        while (true) {
+            for (Lane lane : Lane.values()) {
+                if (!lanes.get(lane).isEmpty() && credits.get(lane) > 0) {
+                    credits.put(lane, credits.get(lane) - 1);
+                    return lane;
+                }
+            }
+            // every non-empty lane used up its weight, starting the next round.
+            for (Lane lane : Lane.values()) {
+                credits.put(lane, lane.getWeight());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void done(T item) {
+        processing.remove(item);
+        Lane lane = dirty.get(item);
+        if (lane != null) {
+            lanes.get(lane).add(item);
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized int length() {
+        int length = 0;
+        for (LinkedHashSet<T> lane : lanes.values()) {
+            length += lane.size();
+        }
+        return length;
+    }
+
+    @Override
+    public synchronized int length(Lane lane) {
+        return lanes.get(lane).size();
+    }
+
+    @Override
+    public synchronized void shutDown() {
+        shuttingDown = true;
+        delayer.shutdownNow();
+        notifyAll();
+    }
+
+    @Override
+    public synchronized boolean isShuttingDown() {
+        return shuttingDown;
+    }
+
+    @Override
+    public void addAfter(T item, Duration duration) {
+        if (duration.isZero() || duration.isNegative()) {
+            add(item);
+            return;
+        }
+        if (isShuttingDown()) {
+            return;
+        }
+        delayer.schedule(() -> add(item), duration.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void addRateLimited(T item) {
+        addAfter(item, rateLimiter.when(item));
+    }
+
+    @Override
+    public void forget(T item) {
+        rateLimiter.forget(item);
+    }
+
+    @Override
+    public int numRequeues(T item) {
+        return rateLimiter.numRequeues(item);
+    }
+}
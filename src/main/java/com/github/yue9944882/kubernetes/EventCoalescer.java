@@ -0,0 +1,125 @@
+package com.github.yue9944882.kubernetes;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Merges the events of a key into one add to the work-queue, e.g. the hundreds of pod events of a
+// replicaset when a node dies. the key is added once no event arrived for the window, or once the max-delay
+// passed since the first event of the burst under a steady stream of events. the key goes to the highest
+// lane of the merged events. so the reconcile runs once upon the settled informer state rather than being
+// dequeued in between the events of the burst.
+//
+// the HIGH lane events, i.e. the changes users wait for, aren't delayed: they add the key right away,
+// taking over the pending burst of the key. the bursts they're part of still merge while the key waits in
+// the work-queue, just not in between the dequeues. the windows are tracked on a timer wheel, an event only
+// updates the burst of its key. a zero window adds the keys right away.
+public class EventCoalescer<T> {
+
+    private final PriorityRateLimitingQueue<T> workQueue;
+
+    private final long windowNanos;
+
+    private final long maxDelayNanos;
+
+    private final LongSupplier clock;
+
+    private final HashedWheelScheduler<T> scheduler;
+
+    private final Map<T, Burst> bursts = new HashMap<>();
+
+    // the events merged into the burst of an already pending key.
+    private final AtomicLong coalescedEvents = new AtomicLong();
+
+    public EventCoalescer(PriorityRateLimitingQueue<T> workQueue, Duration window, Duration maxDelay) {
+        this(workQueue, window, maxDelay, System::nanoTime, Executors.newSingleThreadScheduledExecutor());
+    }
+
+    // without a ticker, e.g. in the tests, the windows only elapse upon calling advance().
+    EventCoalescer(PriorityRateLimitingQueue<T> workQueue, Duration window, Duration maxDelay, LongSupplier clock, ScheduledExecutorService ticker) {
+        this.workQueue = workQueue;
+        this.windowNanos = window.toNanos();
+        this.maxDelayNanos = Math.max(window.toNanos(), maxDelay.toNanos());
+        this.clock = clock;
+        // 10ms ticks, a window is at most one tick late.
+        this.scheduler = new HashedWheelScheduler<>(Duration.ofMillis(10), 512, this::flush, clock, ticker);
+    }
+
+    public void add(T item, PriorityRateLimitingQueue.Lane lane) {
+        if (windowNanos <= 0) {
+            workQueue.add(item, lane);
+            return;
+        }
+        if (lane == PriorityRateLimitingQueue.Lane.HIGH) {
+            synchronized (this) {
+                if (bursts.remove(item) != null) {
+                    coalescedEvents.incrementAndGet();
+                }
+            }
+            workQueue.add(item, lane);
+            return;
+        }
+        long now = clock.getAsLong();
+        synchronized (this) {
+            Burst burst = bursts.get(item);
+            if (burst != null) {
+                burst.lastNanos = now;
+                if (lane.compareTo(burst.lane) < 0) {
+                    burst.lane = lane;
+                }
+                coalescedEvents.incrementAndGet();
+                return;
+            }
+            bursts.put(item, new Burst(now, lane));
+        }
+        scheduler.schedule(item, Duration.ofNanos(windowNanos));
+    }
+
+    public long getCoalescedEvents() {
+        return coalescedEvents.get();
+    }
+
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    void advance() {
+        scheduler.advance();
+    }
+
+    private void flush(T item) {
+        PriorityRateLimitingQueue.Lane lane;
+        synchronized (this) {
+            Burst burst = bursts.get(item);
+            if (burst == null) {
+                return;
+            }
+            long now = clock.getAsLong();
+            long due = Math.min(burst.lastNanos + windowNanos, burst.firstNanos + maxDelayNanos);
+            if (due > now) {
+                // events arrived within the window, waiting for the burst to settle.
+                scheduler.schedule(item, Duration.ofNanos(due - now));
+                return;
+            }
+            bursts.remove(item);
+            lane = burst.lane;
+        }
+        workQueue.add(item, lane);
+    }
+
+    private static class Burst {
+        private final long firstNanos;
+        private long lastNanos;
+        private PriorityRateLimitingQueue.Lane lane;
+
+        private Burst(long firstNanos, PriorityRateLimitingQueue.Lane lane) {
+            this.firstNanos = firstNanos;
+            this.lastNanos = firstNanos;
+            this.lane = lane;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.yue9944882.kubernetes;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+// Fires the scheduled keys upon their deadlines, e.g. requeueing a replicaset when its next pod becomes
+// available. a key is hashed into the slot of its deadline tick on a wheel advanced once per tick, so that
+// scheduling/re-scheduling a key is O(1) however many keys are pending, and a tick only visits the keys of
+// its slot. the keys due more than one revolution ahead stay in their slot until the wheel gets around to
+// their deadline.
+//
+// a key is pending at most once: scheduling a pending key again keeps the earlier deadline. the keys are
+// fired after their deadlines, rounded up to the next tick, never before.
+public class HashedWheelScheduler<T> {
+
+    private final static Logger logger = LoggerFactory.getLogger(HashedWheelScheduler.class);
+
+    private final long tickNanos;
+
+    private final List<Map<T, Long>> wheel;
+
+    // the deadline tick of each pending key.
+    private final Map<T, Long> deadlines = new HashMap<>();
+
+    private final Consumer<T> onDeadline;
+
+    private final LongSupplier clock;
+
+    private final long startNanos;
+
+    // the last tick whose slot was visited.
+    private long tick = 0;
+
+    private final ScheduledExecutorService ticker;
+
+    public HashedWheelScheduler(Duration tickDuration, int slots, Consumer<T> onDeadline) {
+        this(tickDuration, slots, onDeadline, System::nanoTime, Executors.newSingleThreadScheduledExecutor());
+    }
+
+    // the ticker advances the wheel once per tick. without a ticker, e.g. in the tests, the wheel is
+    // only advanced by calling advance().
+    HashedWheelScheduler(Duration tickDuration, int slots, Consumer<T> onDeadline, LongSupplier clock, ScheduledExecutorService ticker) {
+        this.tickNanos = tickDuration.toNanos();
+        this.wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            this.wheel.add(new HashMap<>());
+        }
+        this.onDeadline = onDeadline;
+        this.clock = clock;
+        this.startNanos = clock.getAsLong();
+        this.ticker = ticker;
+        if (ticker != null) {
+            ticker.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // schedules the key to be fired after the delay, unless it's already pending with an earlier deadline.
+    public synchronized void schedule(T key, Duration delay) {
+        // the first tick strictly after the deadline.
+        long deadline = (clock.getAsLong() - startNanos + Math.max(0, delay.toNanos())) / tickNanos + 1;
+        Long pending = deadlines.get(key);
+        if (pending != null) {
+            if (pending <= deadline) {
+                return;
+            }
+            slot(pending).remove(key);
+        }
+        deadlines.put(key, deadline);
+        slot(deadline).put(key, deadline);
+    }
+
+    public synchronized int size() {
+        return deadlines.size();
+    }
+
+    public void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    void advance() {
+        List<T> due = new ArrayList<>();
+        synchronized (this) {
+            // catching up on the ticks missed by a delayed run of the ticker, visiting each slot at most once.
+            long now = (clock.getAsLong() - startNanos) / tickNanos;
+            for (long t = Math.max(tick + 1, now - wheel.size() + 1); t <= now && !deadlines.isEmpty(); t++) {
+                Iterator<Map.Entry<T, Long>> it = slot(t).entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<T, Long> entry = it.next();
+                    if (entry.getValue() <= now) {
+                        it.remove();
+                        deadlines.remove(entry.getKey());
+                        due.add(entry.getKey());
+                    }
+                }
+            }
+            tick = now;
+        }
+        for (T key : due) {
+            try {
+                onDeadline.accept(key);
+            } catch (RuntimeException e) {
+                logger.error("failed firing {}", key, e);
+            }
+        }
+    }
+
+    private Map<T, Long> slot(long tick) {
+        return wheel.get((int) (tick % wheel.size()));
+    }
+}
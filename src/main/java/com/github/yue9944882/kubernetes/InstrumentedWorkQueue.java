@@ -0,0 +1,105 @@
+package com.github.yue9944882.kubernetes;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Decorates a work-queue measuring how long the keys wait before being picked up by a worker.
+// only the immediate adds (i.e. from informer events) are measured, the delayed/rate-limited
+// requeues wait on purpose. the wait is recorded per lane the key is served from.
+public class InstrumentedWorkQueue<T> implements PriorityRateLimitingQueue<T> {
+
+    private final PriorityRateLimitingQueue<T> delegate;
+
+    private final ControllerMetrics controllerMetrics;
+
+    private final ConcurrentMap<T, Added> added = new ConcurrentHashMap<>();
+
+    public InstrumentedWorkQueue(PriorityRateLimitingQueue<T> delegate, ControllerMetrics controllerMetrics) {
+        this.delegate = delegate;
+        this.controllerMetrics = controllerMetrics;
+    }
+
+    @Override
+    public void add(T item) {
+        add(item, Lane.NORMAL);
+    }
+
+    @Override
+    public void add(T item, Lane lane) {
+        // the queue de-duplicates the keys, the wait starts from the first add and a promoted key
+        // is served from the higher lane.
+        long now = System.nanoTime();
+        added.merge(item, new Added(now, lane), (previous, next) -> lane.compareTo(previous.lane) < 0
+                ? new Added(previous.nanos, lane)
+                : previous);
+        delegate.add(item, lane);
+    }
+
+    @Override
+    public T get() throws InterruptedException {
+        T item = delegate.get();
+        if (item != null) {
+            Added itemAdded = added.remove(item);
+            if (itemAdded != null) {
+                controllerMetrics.recordWorkQueueWait(itemAdded.lane, System.nanoTime() - itemAdded.nanos);
+            }
+        }
+        return item;
+    }
+
+    @Override
+    public int length() {
+        return delegate.length();
+    }
+
+    @Override
+    public int length(Lane lane) {
+        return delegate.length(lane);
+    }
+
+    @Override
+    public void done(T item) {
+        delegate.done(item);
+    }
+
+    @Override
+    public void shutDown() {
+        delegate.shutDown();
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return delegate.isShuttingDown();
+    }
+
+    @Override
+    public void addAfter(T item, Duration duration) {
+        delegate.addAfter(item, duration);
+    }
+
+    @Override
+    public void addRateLimited(T item) {
+        delegate.addRateLimited(item);
+    }
+
+    @Override
+    public void forget(T item) {
+        delegate.forget(item);
+    }
+
+    @Override
+    public int numRequeues(T item) {
+        return delegate.numRequeues(item);
+    }
+
+    private static class Added {
+        private final long nanos;
+        private final Lane lane;
+
+        private Added(long nanos, Lane lane) {
+            this.nanos = nanos;
+            this.lane = lane;
+        }
+    }
+}
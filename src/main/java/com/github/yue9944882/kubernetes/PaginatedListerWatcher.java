@@ -0,0 +1,74 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.informer.ListerWatcher;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.models.V1ListMeta;
+import io.kubernetes.client.util.CallGeneratorParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+// List-watches for an informer, listing in pages of limit/continue instead of one response of every
+// object in the cluster, so that neither the apiserver nor the informer holds the whole encoded list
+// at once. the pages are decoded one at a time and only their items are retained, so a subclass
+// projecting the items lets the decoded objects of a page go before the next page is listed.
+//
+// the first page is a consistent read with the resource-version unset, as the apiserver ignores the
+// limit when serving resource-version "0" from its watch cache. the continued pages are served from the
+// snapshot of the first page. if the continue token expires in between, the list is re-done in a single
+// response, like the pager of client-go. a non-positive page size lists in a single response as well.
+public abstract class PaginatedListerWatcher<ApiType, ApiListType> implements ListerWatcher<ApiType, ApiListType> {
+
+    private final static Logger logger = LoggerFactory.getLogger(PaginatedListerWatcher.class);
+
+    private final int pageSize;
+
+    protected PaginatedListerWatcher(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    // lists one page of the objects, the limit and the continue token are null for a single response.
+    protected abstract ApiListType listPage(Integer limit, String continueToken, String resourceVersion, Integer timeoutSeconds) throws ApiException;
+
+    protected abstract V1ListMeta getListMeta(ApiListType list);
+
+    protected abstract List<ApiType> getItems(ApiListType list);
+
+    protected abstract void setItems(ApiListType list, List<ApiType> items);
+
+    @Override
+    public ApiListType list(CallGeneratorParams params) throws ApiException {
+        if (pageSize <= 0) {
+            return listPage(null, null, params.resourceVersion, params.timeoutSeconds);
+        }
+        ApiListType page = listPage(pageSize, null, null, params.timeoutSeconds);
+        String continueToken = getListMeta(page).getContinue();
+        if (continueToken == null || continueToken.isEmpty()) {
+            return page;
+        }
+        Long remaining = getListMeta(page).getRemainingItemCount();
+        List<ApiType> items = new ArrayList<>(getItems(page).size() + (remaining == null ? 0 : remaining.intValue()));
+        items.addAll(getItems(page));
+        int pages = 1;
+        while (continueToken != null && !continueToken.isEmpty()) {
+            try {
+                page = listPage(pageSize, continueToken, null, params.timeoutSeconds);
+            } catch (ApiException e) {
+                if (e.getCode() != HttpURLConnection.HTTP_GONE) {
+                    throw e;
+                }
+                logger.warn("continue token expired after {} pages of {} items, re-listing in a single response", pages, pageSize);
+                return listPage(null, null, null, params.timeoutSeconds);
+            }
+            items.addAll(getItems(page));
+            continueToken = getListMeta(page).getContinue();
+            pages++;
+        }
+        // the last page carries the resource-version of the snapshot, from which the informer watches.
+        setItems(page, items);
+        return page;
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.openapi.models.V1OwnerReference;
+import io.kubernetes.client.openapi.models.V1Pod;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Custom indexers registered on the pod informer so that the reconciler can look up
+// the pods related to a replicaset without scanning the whole namespace.
+public class PodIndexers {
+
+    // indexes pods by the uid of their controlling replicaset.
+    public static final String CONTROLLER_UID_INDEX = "replicaset-controller-uid";
+
+    // indexes pods without a controlling replicaset by "<namespace>/<label-key>=<label-value>".
+    public static final String ORPHAN_LABEL_INDEX = "replicaset-orphan-label";
+
+    public static final Function<V1Pod, List<String>> controllerUidIndexFunc = pod -> {
+        V1OwnerReference ref = Utils.getReplicaSetControllerOwnerRef(pod);
+        if (ref == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(ref.getUid());
+    };
+
+    public static final Function<V1Pod, List<String>> orphanLabelIndexFunc = pod -> {
+        if (Utils.getReplicaSetControllerOwnerRef(pod) != null) {
+            return Collections.emptyList();
+        }
+        Map<String, String> labels = pod.getMetadata().getLabels();
+        if (labels == null || labels.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> keys = new ArrayList<>(labels.size());
+        for (Map.Entry<String, String> label : labels.entrySet()) {
+            keys.add(orphanLabelIndexKey(pod.getMetadata().getNamespace(), label.getKey(), label.getValue()));
+        }
+        return keys;
+    };
+
+    public static String orphanLabelIndexKey(String namespace, String labelKey, String labelValue) {
+        return namespace + "/" + labelKey + "=" + labelValue;
+    }
+}
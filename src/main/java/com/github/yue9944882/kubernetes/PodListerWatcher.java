@@ -0,0 +1,169 @@
+package com.github.yue9944882.kubernetes;
+
+import com.google.gson.reflect.TypeToken;
+import io.kubernetes.client.ProtoClient;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1ListMeta;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodList;
+import io.kubernetes.client.proto.V1;
+import io.kubernetes.client.util.CallGeneratorParams;
+import io.kubernetes.client.util.Watch;
+import io.kubernetes.client.util.Watchable;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// List-watches the pods across all the namespaces for the pod informer. in slim mode, the pods are
+// replaced by their {@link PodProjection} before reaching the informer cache, page by page while listing.
+//
+// optionally in slim mode, the pages are listed in the protobuf encoding and projected straight from the
+// protobuf messages, skipping the json decoding of the full pods. the watch stays in json.
+public class PodListerWatcher extends PaginatedListerWatcher<V1Pod, V1PodList> {
+
+    private final ApiClient apiClient;
+
+    private final CoreV1Api coreV1Api;
+
+    private final ProtoClient protoClient;
+
+    private final boolean slim;
+
+    private final boolean protobuf;
+
+    public PodListerWatcher(ApiClient apiClient, boolean slim, int pageSize, boolean protobuf) {
+        super(pageSize);
+        this.apiClient = apiClient;
+        this.coreV1Api = new CoreV1Api(apiClient);
+        this.protoClient = new ProtoClient(apiClient);
+        this.slim = slim;
+        this.protobuf = protobuf;
+    }
+
+    @Override
+    protected V1PodList listPage(Integer limit, String continueToken, String resourceVersion, Integer timeoutSeconds) throws ApiException {
+        if (slim && protobuf) {
+            return listProtobufPage(limit, continueToken, resourceVersion, timeoutSeconds);
+        }
+        V1PodList podList = coreV1Api.listPodForAllNamespaces(
+                null, continueToken, null, null, limit, null, resourceVersion, timeoutSeconds, false);
+        if (slim) {
+            List<V1Pod> projected = new ArrayList<>(podList.getItems().size());
+            for (V1Pod pod : podList.getItems()) {
+                projected.add(PodProjection.project(pod));
+            }
+            podList.setItems(projected);
+        }
+        return podList;
+    }
+
+    private V1PodList listProtobufPage(Integer limit, String continueToken, String resourceVersion, Integer timeoutSeconds) throws ApiException {
+        List<String> query = new ArrayList<>();
+        try {
+            if (limit != null) {
+                query.add("limit=" + limit);
+            }
+            if (continueToken != null) {
+                query.add("continue=" + URLEncoder.encode(continueToken, "UTF-8"));
+            }
+            if (resourceVersion != null) {
+                query.add("resourceVersion=" + URLEncoder.encode(resourceVersion, "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        if (timeoutSeconds != null) {
+            query.add("timeoutSeconds=" + timeoutSeconds);
+        }
+        String path = query.isEmpty() ? "/api/v1/pods" : "/api/v1/pods?" + String.join("&", query);
+        ProtoClient.ObjectOrStatus<V1.PodList> result;
+        try {
+            result = protoClient.list(V1.PodList.newBuilder(), path);
+        } catch (IOException e) {
+            throw new ApiException(e);
+        }
+        if (result.status != null) {
+            throw new ApiException(result.status.getCode(), result.status.getMessage());
+        }
+        List<V1Pod> projected = new ArrayList<>(result.object.getItemsCount());
+        for (V1.Pod pod : result.object.getItemsList()) {
+            projected.add(PodProjection.project(pod));
+        }
+        V1ListMeta metadata = new V1ListMeta()
+                .resourceVersion(result.object.getMetadata().getResourceVersion());
+        if (result.object.getMetadata().hasContinue()) {
+            metadata._continue(result.object.getMetadata().getContinue());
+        }
+        if (result.object.getMetadata().hasRemainingItemCount()) {
+            metadata.remainingItemCount(result.object.getMetadata().getRemainingItemCount());
+        }
+        return new V1PodList()
+                .metadata(metadata)
+                .items(projected);
+    }
+
+    @Override
+    protected V1ListMeta getListMeta(V1PodList list) {
+        return list.getMetadata();
+    }
+
+    @Override
+    protected List<V1Pod> getItems(V1PodList list) {
+        return list.getItems();
+    }
+
+    @Override
+    protected void setItems(V1PodList list, List<V1Pod> items) {
+        list.setItems(items);
+    }
+
+    @Override
+    public Watchable<V1Pod> watch(CallGeneratorParams params) throws ApiException {
+        Watch<V1Pod> watch = Watch.createWatch(
+                apiClient,
+                coreV1Api.listPodForAllNamespacesCall(
+                        null, null, null, null, null, null, params.resourceVersion, params.timeoutSeconds, true, null),
+                new TypeToken<Watch.Response<V1Pod>>() {
+                }.getType());
+        return slim ? new ProjectingWatch(watch) : watch;
+    }
+
+    private static class ProjectingWatch implements Watchable<V1Pod> {
+
+        private final Watchable<V1Pod> delegate;
+
+        private ProjectingWatch(Watchable<V1Pod> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public Watch.Response<V1Pod> next() {
+            Watch.Response<V1Pod> response = delegate.next();
+            if (response.object != null) {
+                response.object = PodProjection.project(response.object);
+            }
+            return response;
+        }
+
+        @Override
+        public Iterator<Watch.Response<V1Pod>> iterator() {
+            return this;
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
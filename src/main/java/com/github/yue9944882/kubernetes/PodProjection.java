@@ -0,0 +1,165 @@
+package com.github.yue9944882.kubernetes;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import io.kubernetes.client.openapi.models.*;
+import io.kubernetes.client.proto.Meta;
+import io.kubernetes.client.proto.V1;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Projects a pod onto the fields read by the controller, so that the pod informer doesn't cache
+// the specs, container statuses, managed fields and annotations of every pod in the cluster:
+//  - metadata: name, namespace, uid, resourceVersion, creationTimestamp, deletionTimestamp, labels, ownerReferences
+//  - spec: nodeName
+//  - status: phase, the Ready condition, the restart count of each container
+// the strings repeated across pods (label keys/values, owner references, phases) are interned. the pods
+// listed in the protobuf encoding are projected from the protobuf messages directly.
+public class PodProjection {
+
+    private static final Interner<String> strings = Interners.newWeakInterner();
+
+    public static V1Pod project(V1Pod pod) {
+        V1ObjectMeta metadata = pod.getMetadata();
+        V1Pod projected = new V1Pod()
+                .metadata(new V1ObjectMeta()
+                        .name(metadata.getName())
+                        .namespace(intern(metadata.getNamespace()))
+                        .uid(metadata.getUid())
+                        .resourceVersion(metadata.getResourceVersion())
+                        .creationTimestamp(metadata.getCreationTimestamp())
+                        .deletionTimestamp(metadata.getDeletionTimestamp())
+                        .labels(internLabels(metadata.getLabels()))
+                        .ownerReferences(internOwnerReferences(metadata.getOwnerReferences())));
+        if (pod.getSpec() != null && pod.getSpec().getNodeName() != null) {
+            projected.spec(new V1PodSpec().nodeName(intern(pod.getSpec().getNodeName())));
+        } else {
+            projected.spec(new V1PodSpec());
+        }
+        V1PodStatus status = new V1PodStatus();
+        if (pod.getStatus() != null) {
+            status.phase(intern(pod.getStatus().getPhase()));
+            V1PodCondition ready = Utils.getPodCondition(pod, "Ready");
+            if (ready != null) {
+                status.conditions(Collections.singletonList(new V1PodCondition()
+                        .type(intern(ready.getType()))
+                        .status(intern(ready.getStatus()))
+                        .lastTransitionTime(ready.getLastTransitionTime())));
+            }
+            if (pod.getStatus().getContainerStatuses() != null) {
+                List<V1ContainerStatus> containerStatuses = new ArrayList<>(pod.getStatus().getContainerStatuses().size());
+                for (V1ContainerStatus containerStatus : pod.getStatus().getContainerStatuses()) {
+                    containerStatuses.add(new V1ContainerStatus()
+                            .name(intern(containerStatus.getName()))
+                            .restartCount(containerStatus.getRestartCount()));
+                }
+                status.containerStatuses(containerStatuses);
+            }
+        }
+        return projected.status(status);
+    }
+
+    // projects a pod decoded from the protobuf encoding, without building the full pod.
+    public static V1Pod project(V1.Pod pod) {
+        Meta.ObjectMeta metadata = pod.getMetadata();
+        List<V1OwnerReference> ownerReferences = null;
+        if (metadata.getOwnerReferencesCount() > 0) {
+            ownerReferences = new ArrayList<>(metadata.getOwnerReferencesCount());
+            for (Meta.OwnerReference ref : metadata.getOwnerReferencesList()) {
+                ownerReferences.add(new V1OwnerReference()
+                        .apiVersion(intern(ref.getApiVersion()))
+                        .kind(intern(ref.getKind()))
+                        .name(intern(ref.getName()))
+                        .uid(intern(ref.getUid()))
+                        .controller(ref.hasController() ? ref.getController() : null)
+                        .blockOwnerDeletion(ref.hasBlockOwnerDeletion() ? ref.getBlockOwnerDeletion() : null));
+            }
+        }
+        V1Pod projected = new V1Pod()
+                .metadata(new V1ObjectMeta()
+                        .name(metadata.getName())
+                        .namespace(intern(metadata.getNamespace()))
+                        .uid(metadata.getUid())
+                        .resourceVersion(metadata.getResourceVersion())
+                        .creationTimestamp(metadata.hasCreationTimestamp() ? time(metadata.getCreationTimestamp()) : null)
+                        .deletionTimestamp(metadata.hasDeletionTimestamp() ? time(metadata.getDeletionTimestamp()) : null)
+                        .labels(metadata.getLabelsCount() > 0 ? internLabels(metadata.getLabelsMap()) : null)
+                        .ownerReferences(ownerReferences));
+        if (pod.getSpec().hasNodeName()) {
+            projected.spec(new V1PodSpec().nodeName(intern(pod.getSpec().getNodeName())));
+        } else {
+            projected.spec(new V1PodSpec());
+        }
+        V1PodStatus status = new V1PodStatus();
+        if (pod.hasStatus()) {
+            status.phase(pod.getStatus().hasPhase() ? intern(pod.getStatus().getPhase()) : null);
+            for (V1.PodCondition condition : pod.getStatus().getConditionsList()) {
+                if ("Ready".equals(condition.getType())) {
+                    status.conditions(Collections.singletonList(new V1PodCondition()
+                            .type(intern(condition.getType()))
+                            .status(intern(condition.getStatus()))
+                            .lastTransitionTime(condition.hasLastTransitionTime() ? time(condition.getLastTransitionTime()) : null)));
+                    break;
+                }
+            }
+            if (pod.getStatus().getContainerStatusesCount() > 0) {
+                List<V1ContainerStatus> containerStatuses = new ArrayList<>(pod.getStatus().getContainerStatusesCount());
+                for (V1.ContainerStatus containerStatus : pod.getStatus().getContainerStatusesList()) {
+                    containerStatuses.add(new V1ContainerStatus()
+                            .name(intern(containerStatus.getName()))
+                            .restartCount(containerStatus.hasRestartCount() ? containerStatus.getRestartCount() : null));
+                }
+                status.containerStatuses(containerStatuses);
+            }
+        }
+        return projected.status(status);
+    }
+
+    private static OffsetDateTime time(Meta.Time time) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(time.getSeconds(), time.getNanos()), ZoneOffset.UTC);
+    }
+
+    private static Map<String, String> internLabels(Map<String, String> labels) {
+        if (labels == null) {
+            return null;
+        }
+        if (labels.size() == 1) {
+            Map.Entry<String, String> label = labels.entrySet().iterator().next();
+            return Collections.singletonMap(intern(label.getKey()), intern(label.getValue()));
+        }
+        // sized so that the map doesn't resize nor keep spare buckets.
+        Map<String, String> interned = new HashMap<>((int) Math.ceil(labels.size() / 0.75));
+        for (Map.Entry<String, String> label : labels.entrySet()) {
+            interned.put(intern(label.getKey()), intern(label.getValue()));
+        }
+        return interned;
+    }
+
+    private static List<V1OwnerReference> internOwnerReferences(List<V1OwnerReference> ownerReferences) {
+        if (ownerReferences == null) {
+            return null;
+        }
+        List<V1OwnerReference> interned = new ArrayList<>(ownerReferences.size());
+        for (V1OwnerReference ref : ownerReferences) {
+            interned.add(new V1OwnerReference()
+                    .apiVersion(intern(ref.getApiVersion()))
+                    .kind(intern(ref.getKind()))
+                    .name(intern(ref.getName()))
+                    .uid(intern(ref.getUid()))
+                    .controller(ref.getController())
+                    .blockOwnerDeletion(ref.getBlockOwnerDeletion()));
+        }
+        return interned;
+    }
+
+    private static String intern(String s) {
+        return s == null ? null : strings.intern(s);
+    }
+}
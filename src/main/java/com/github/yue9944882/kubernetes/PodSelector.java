@@ -0,0 +1,146 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.openapi.models.V1LabelSelector;
+import io.kubernetes.client.openapi.models.V1LabelSelectorRequirement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// A label selector compiled into flat arrays, so that matching a pod doesn't allocate.
+// supports both the matchLabels and the matchExpressions (In, NotIn, Exists, DoesNotExist).
+// see the original go code at:
+// https://github.com/kubernetes/apimachinery/blob/master/pkg/apis/meta/v1/helpers.go
+public class PodSelector {
+
+    private static final int OP_IN = 0;
+    private static final int OP_NOT_IN = 1;
+    private static final int OP_EXISTS = 2;
+    private static final int OP_DOES_NOT_EXIST = 3;
+
+    // a nil selector matches nothing.
+    public static final PodSelector NOTHING = new PodSelector(new String[0], new int[0], new String[0][], false);
+
+    private final String[] keys;
+
+    private final int[] operators;
+
+    private final String[][] values;
+
+    private final boolean matchesAnything;
+
+    private PodSelector(String[] keys, int[] operators, String[][] values, boolean matchesAnything) {
+        this.keys = keys;
+        this.operators = operators;
+        this.values = values;
+        this.matchesAnything = matchesAnything;
+    }
+
+    public static PodSelector compile(V1LabelSelector selector) {
+        if (selector == null) {
+            return NOTHING;
+        }
+        List<String> keys = new ArrayList<>();
+        List<Integer> operators = new ArrayList<>();
+        List<String[]> values = new ArrayList<>();
+        if (selector.getMatchLabels() != null) {
+            for (Map.Entry<String, String> label : selector.getMatchLabels().entrySet()) {
+                keys.add(label.getKey());
+                operators.add(OP_IN);
+                values.add(new String[]{label.getValue()});
+            }
+        }
+        if (selector.getMatchExpressions() != null) {
+            for (V1LabelSelectorRequirement expr : selector.getMatchExpressions()) {
+                int operator;
+                switch (expr.getOperator()) {
+                    case "In":
+                        operator = OP_IN;
+                        break;
+                    case "NotIn":
+                        operator = OP_NOT_IN;
+                        break;
+                    case "Exists":
+                        operator = OP_EXISTS;
+                        break;
+                    case "DoesNotExist":
+                        operator = OP_DOES_NOT_EXIST;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unsupported label selector operator: " + expr.getOperator());
+                }
+                keys.add(expr.getKey());
+                operators.add(operator);
+                values.add(expr.getValues() == null ? new String[0] : expr.getValues().toArray(new String[0]));
+            }
+        }
+        int[] ops = new int[operators.size()];
+        for (int i = 0; i < ops.length; i++) {
+            ops[i] = operators.get(i);
+        }
+        // an empty selector matches everything.
+        return new PodSelector(keys.toArray(new String[0]), ops, values.toArray(new String[0][]), true);
+    }
+
+    public boolean matches(Map<String, String> labels) {
+        if (!matchesAnything) {
+            return false;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            String value = labels == null ? null : labels.get(keys[i]);
+            switch (operators[i]) {
+                case OP_IN:
+                    if (value == null || !contains(values[i], value)) {
+                        return false;
+                    }
+                    break;
+                case OP_NOT_IN:
+                    if (value != null && contains(values[i], value)) {
+                        return false;
+                    }
+                    break;
+                case OP_EXISTS:
+                    if (value == null) {
+                        return false;
+                    }
+                    break;
+                case OP_DOES_NOT_EXIST:
+                    if (value != null) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // returns the index of a "key=value" requirement every matching pod must have, or -1 if there's
+    // no such requirement. used for looking up the candidate pods from a label index.
+    public int equalityRequirement() {
+        for (int i = 0; i < keys.length; i++) {
+            if (operators[i] == OP_IN && values[i].length == 1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getKey(int requirement) {
+        return keys[requirement];
+    }
+
+    public String getValue(int requirement) {
+        return values[requirement][0];
+    }
+
+    private static boolean contains(String[] values, String value) {
+        for (String v : values) {
+            if (v.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.common.KubernetesObject;
+import io.kubernetes.client.extended.controller.ControllerWatch;
+import io.kubernetes.client.extended.controller.reconciler.Request;
+import io.kubernetes.client.informer.ResourceEventHandler;
+
+import java.time.Duration;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// Like the default controller-watch, but the event handlers pick the lane of the priority work-queue
+// the key goes to. a handler returning null drops the event. the keys reach the work-queue through
+// the {@link EventCoalescer} merging the bursts of events. an update may also enqueue a former key of the
+// object, e.g. the former owner of a pod, in the NORMAL lane.
+public class PrioritizedControllerWatch<ApiType extends KubernetesObject> implements ControllerWatch<ApiType> {
+
+    private final Class<ApiType> apiTypeClass;
+
+    private final EventCoalescer<Request> eventCoalescer;
+
+    private final Function<ApiType, Request> workQueueKeyFunc;
+
+    private final Function<ApiType, PriorityRateLimitingQueue.Lane> onAdd;
+
+    private final BiFunction<ApiType, ApiType, PriorityRateLimitingQueue.Lane> onUpdate;
+
+    private final BiFunction<ApiType, Boolean, PriorityRateLimitingQueue.Lane> onDelete;
+
+    private final BiFunction<ApiType, ApiType, Request> formerKeyFunc;
+
+    private final Duration resyncPeriod;
+
+    public PrioritizedControllerWatch(
+            Class<ApiType> apiTypeClass,
+            EventCoalescer<Request> eventCoalescer,
+            Function<ApiType, Request> workQueueKeyFunc,
+            Function<ApiType, PriorityRateLimitingQueue.Lane> onAdd,
+            BiFunction<ApiType, ApiType, PriorityRateLimitingQueue.Lane> onUpdate,
+            BiFunction<ApiType, Boolean, PriorityRateLimitingQueue.Lane> onDelete,
+            Duration resyncPeriod) {
+        this(apiTypeClass, eventCoalescer, workQueueKeyFunc, onAdd, onUpdate, onDelete, (oldObj, newObj) -> null, resyncPeriod);
+    }
+
+    public PrioritizedControllerWatch(
+            Class<ApiType> apiTypeClass,
+            EventCoalescer<Request> eventCoalescer,
+            Function<ApiType, Request> workQueueKeyFunc,
+            Function<ApiType, PriorityRateLimitingQueue.Lane> onAdd,
+            BiFunction<ApiType, ApiType, PriorityRateLimitingQueue.Lane> onUpdate,
+            BiFunction<ApiType, Boolean, PriorityRateLimitingQueue.Lane> onDelete,
+            BiFunction<ApiType, ApiType, Request> formerKeyFunc,
+            Duration resyncPeriod) {
+        this.apiTypeClass = apiTypeClass;
+        this.eventCoalescer = eventCoalescer;
+        this.workQueueKeyFunc = workQueueKeyFunc;
+        this.onAdd = onAdd;
+        this.onUpdate = onUpdate;
+        this.onDelete = onDelete;
+        this.formerKeyFunc = formerKeyFunc;
+        this.resyncPeriod = resyncPeriod;
+    }
+
+    @Override
+    public Class<ApiType> getResourceClass() {
+        return apiTypeClass;
+    }
+
+    @Override
+    public Duration getResyncPeriod() {
+        return resyncPeriod;
+    }
+
+    @Override
+    public ResourceEventHandler<ApiType> getResourceEventHandler() {
+        return new ResourceEventHandler<ApiType>() {
+            @Override
+            public void onAdd(ApiType obj) {
+                enqueue(obj, onAdd.apply(obj));
+            }
+
+            @Override
+            public void onUpdate(ApiType oldObj, ApiType newObj) {
+                Request formerKey = formerKeyFunc.apply(oldObj, newObj);
+                if (formerKey != null) {
+                    eventCoalescer.add(formerKey, PriorityRateLimitingQueue.Lane.NORMAL);
+                }
+                enqueue(newObj, onUpdate.apply(oldObj, newObj));
+            }
+
+            @Override
+            public void onDelete(ApiType obj, boolean deletedFinalStateUnknown) {
+                enqueue(obj, onDelete.apply(obj, deletedFinalStateUnknown));
+            }
+        };
+    }
+
+    private void enqueue(ApiType obj, PriorityRateLimitingQueue.Lane lane) {
+        if (lane != null) {
+            eventCoalescer.add(workQueueKeyFunc.apply(obj), lane);
+        }
+    }
+}
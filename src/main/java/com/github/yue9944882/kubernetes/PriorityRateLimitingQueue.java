@@ -0,0 +1,33 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.extended.workqueue.RateLimitingQueue;
+
+// A rate-limiting work-queue whose keys wait in lanes of different priorities, see {@link DefaultPriorityRateLimitingQueue}.
+// the plain adds and the requeues go to the NORMAL lane.
+public interface PriorityRateLimitingQueue<T> extends RateLimitingQueue<T> {
+
+    // adds the key to the lane, or promotes it if it's already waiting in a lower lane.
+    void add(T item, Lane lane);
+
+    // the number of keys waiting in the lane.
+    int length(Lane lane);
+
+    // the lanes from the highest priority, a lane is served weight times per round over the non-empty lanes.
+    enum Lane {
+        // user-driven changes, e.g. replicaset spec changes and pod deletions.
+        HIGH(8),
+        NORMAL(3),
+        // resyncs and status-only changes.
+        LOW(1);
+
+        private final int weight;
+
+        Lane(int weight) {
+            this.weight = weight;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.yue9944882.kubernetes;
+
+import java.util.List;
+
+// Aggregates the per-pod failures of one manage-replicas run, surfaced via the "ReplicaFailure" condition.
+public class ReplicaFailureException extends Exception {
+
+    // the number of failures spelled out in the message, the rest are only counted.
+    private static final int MAX_REPORTED_FAILURES = 5;
+
+    private final String reason;
+
+    private final List<String> failures;
+
+    public ReplicaFailureException(String reason, List<String> failures) {
+        super(describe(failures));
+        this.reason = reason;
+        this.failures = failures;
+    }
+
+    // either "FailedCreate" or "FailedDelete".
+    public String getReason() {
+        return reason;
+    }
+
+    public List<String> getFailures() {
+        return failures;
+    }
+
+    private static String describe(List<String> failures) {
+        if (failures.size() <= MAX_REPORTED_FAILURES) {
+            return String.join("; ", failures);
+        }
+        return String.join("; ", failures.subList(0, MAX_REPORTED_FAILURES))
+                + "; and " + (failures.size() - MAX_REPORTED_FAILURES) + " more";
+    }
+}
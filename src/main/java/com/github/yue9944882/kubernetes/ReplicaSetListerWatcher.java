@@ -0,0 +1,59 @@
+package com.github.yue9944882.kubernetes;
+
+import com.google.gson.reflect.TypeToken;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.apis.AppsV1Api;
+import io.kubernetes.client.openapi.models.V1ListMeta;
+import io.kubernetes.client.openapi.models.V1ReplicaSet;
+import io.kubernetes.client.openapi.models.V1ReplicaSetList;
+import io.kubernetes.client.util.CallGeneratorParams;
+import io.kubernetes.client.util.Watch;
+import io.kubernetes.client.util.Watchable;
+
+import java.util.List;
+
+// List-watches the replicasets across all the namespaces for the replicaset informer.
+public class ReplicaSetListerWatcher extends PaginatedListerWatcher<V1ReplicaSet, V1ReplicaSetList> {
+
+    private final ApiClient apiClient;
+
+    private final AppsV1Api appsV1Api;
+
+    public ReplicaSetListerWatcher(ApiClient apiClient, int pageSize) {
+        super(pageSize);
+        this.apiClient = apiClient;
+        this.appsV1Api = new AppsV1Api(apiClient);
+    }
+
+    @Override
+    protected V1ReplicaSetList listPage(Integer limit, String continueToken, String resourceVersion, Integer timeoutSeconds) throws ApiException {
+        return appsV1Api.listReplicaSetForAllNamespaces(
+                null, continueToken, null, null, limit, null, resourceVersion, timeoutSeconds, false);
+    }
+
+    @Override
+    protected V1ListMeta getListMeta(V1ReplicaSetList list) {
+        return list.getMetadata();
+    }
+
+    @Override
+    protected List<V1ReplicaSet> getItems(V1ReplicaSetList list) {
+        return list.getItems();
+    }
+
+    @Override
+    protected void setItems(V1ReplicaSetList list, List<V1ReplicaSet> items) {
+        list.setItems(items);
+    }
+
+    @Override
+    public Watchable<V1ReplicaSet> watch(CallGeneratorParams params) throws ApiException {
+        return Watch.createWatch(
+                apiClient,
+                appsV1Api.listReplicaSetForAllNamespacesCall(
+                        null, null, null, null, null, null, params.resourceVersion, params.timeoutSeconds, true, null),
+                new TypeToken<Watch.Response<V1ReplicaSet>>() {
+                }.getType());
+    }
+}
@@ -1,49 +1,56 @@
 package com.github.yue9944882.kubernetes;
 
-import com.google.common.collect.Maps;
-import com.google.gson.JsonSyntaxException;
+import com.github.yue9944882.kubernetes.PriorityRateLimitingQueue.Lane;
+import com.github.yue9944882.kubernetes.config.ControllerProperties;
+import io.kubernetes.client.custom.V1Patch;
 import io.kubernetes.client.extended.controller.reconciler.Reconciler;
 import io.kubernetes.client.extended.controller.reconciler.Request;
 import io.kubernetes.client.extended.controller.reconciler.Result;
+import io.kubernetes.client.extended.workqueue.RateLimitingQueue;
+import io.kubernetes.client.extended.workqueue.ratelimiter.RateLimiter;
+import io.kubernetes.client.informer.SharedIndexInformer;
 import io.kubernetes.client.informer.SharedInformer;
+import io.kubernetes.client.informer.cache.Indexer;
 import io.kubernetes.client.informer.cache.Lister;
 import io.kubernetes.client.openapi.ApiClient;
 import io.kubernetes.client.openapi.ApiException;
 import io.kubernetes.client.openapi.apis.AppsV1Api;
 import io.kubernetes.client.openapi.apis.CoreV1Api;
 import io.kubernetes.client.openapi.models.*;
-import io.kubernetes.client.spring.extended.controller.annotation.*;
-import io.kubernetes.client.util.labels.EqualityMatcher;
-import io.kubernetes.client.util.labels.LabelMatcher;
-import io.kubernetes.client.util.labels.LabelSelector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
-@KubernetesReconciler(
-        watches =
-        @KubernetesReconcilerWatches({
-                @KubernetesReconcilerWatch(
-                        apiTypeClass = V1Pod.class, // the reconciler needs to subscribe pod events.
-                        workQueueKeyFunc = PodWorkQueueKeyFunc.class, // mapping pod event to reconciler-request
-                        resyncPeriodMillis = 60 * 1000L // resync every 60s
-                ),
-                @KubernetesReconcilerWatch(
-                        apiTypeClass = V1ReplicaSet.class,// the reconciler needs to subscribe replicaset events.
-                        resyncPeriodMillis = 60 * 1000L // resync every 60s
-                )
-        }))
+// the reconciler is wired with its pod/replicaset watches, work-queue and workers in
+// {@link com.github.yue9944882.kubernetes.config.ControllerConfiguration}.
 public class ReplicaSetReconciler implements Reconciler {
 
     private final static Logger logger = LoggerFactory.getLogger(ReplicaSetReconciler.class);
 
+    private final static int SLOW_START_INITIAL_BATCH_SIZE = 1;
+
+    // the status code of a failed json-patch test.
+    private final static int HTTP_UNPROCESSABLE_ENTITY = 422;
+
     @Autowired
     private Lister<V1Pod> podLister;
 
@@ -59,169 +66,721 @@ public class ReplicaSetReconciler implements Reconciler {
     @Autowired
     private ApiClient apiClient;
 
+    private final AtomicLong skippedStatusUpdates = new AtomicLong();
+
+    @Autowired
+    private ControllerProperties controllerProperties;
+
+    @Autowired
+    private ControllerExpectations controllerExpectations;
+
+    @Autowired
+    private ControllerMetrics controllerMetrics;
+
+    @Autowired
+    private ReplicaSetSelectorCache selectorCache;
+
+    @Autowired
+    private RateLimitingQueue<Request> replicaSetWorkQueue;
+
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
+    @Autowired
+    private CoreV1Api coreV1Api;
+
+    @Autowired
+    private AppsV1Api appsV1Api;
+
+    @Autowired
+    private ApiCallExecutor apiCallExecutor;
+
+    // the backoff of the replicasets failed in the async mode, as the worker forgets the
+    // replicaset as soon as the calls are sent.
+    @Autowired
+    @Qualifier("async-requeue-rate-limiter")
+    private RateLimiter<Request> asyncRequeueRateLimiter;
+
+    // requeues the replicasets when their next ready pod becomes available.
+    @Autowired
+    private HashedWheelScheduler<Request> availabilityRequeueScheduler;
+
+    // the replicasets with api calls in flight in the async mode, mapped to whether they were requested again meanwhile.
+    private final ConcurrentMap<String, Boolean> inFlightReplicaSets = new ConcurrentHashMap<>();
+
 
     // the filter only applies for ADD event from pod.
-    // the method must be public-access.
-    @AddWatchEventFilter(apiTypeClass = V1Pod.class)
     public boolean onAddFilter(V1Pod pod) {
-        return Utils.getReplicaSetControllerOwnerRef(pod) != null;
+        V1OwnerReference ref = Utils.getReplicaSetControllerOwnerRef(pod);
+        if (ref == null) {
+            return false;
+        }
+        String rsKey = Utils.getKey(pod.getMetadata().getNamespace(), ref.getName());
+        if (pod.getMetadata().getDeletionTimestamp() != null) {
+            // on a restart of the controller, a pod may be observed already pending deletion.
+            this.controllerExpectations.deletionObserved(rsKey, Utils.getKey(pod.getMetadata().getNamespace(), pod.getMetadata().getName()));
+        } else {
+            this.controllerExpectations.creationObserved(rsKey);
+        }
+        return true;
     }
 
     // the filter only applies for UPDATE event from pod.
-    // the method must be public-access.
-    @UpdateWatchEventFilter(apiTypeClass = V1Pod.class)
+    // only the updates which may change the replicas/status of the owning replicaset pass the filter,
+    // e.g. kubelet heartbeats and container status changes don't.
     public boolean onUpdateFilter(V1Pod oldPod, V1Pod newPod) {
-        return Utils.getReplicaSetControllerOwnerRef(newPod) != null;
+        V1OwnerReference newRef = Utils.getReplicaSetControllerOwnerRef(newPod);
+        if (newRef == null) {
+            return false;
+        }
+        if (newPod.getMetadata().getDeletionTimestamp() != null) {
+            // a graceful deletion is observed as soon as the deletion-timestamp is set.
+            this.controllerExpectations.deletionObserved(
+                    Utils.getKey(newPod.getMetadata().getNamespace(), newRef.getName()),
+                    Utils.getKey(newPod.getMetadata().getNamespace(), newPod.getMetadata().getName()));
+        }
+        if (!isRelevantPodUpdate(oldPod, newPod)) {
+            this.controllerMetrics.recordFilteredPodUpdate();
+            return false;
+        }
+        return true;
+    }
+
+    static boolean isRelevantPodUpdate(V1Pod oldPod, V1Pod newPod) {
+        if (Objects.equals(oldPod.getMetadata().getResourceVersion(), newPod.getMetadata().getResourceVersion())) {
+            // periodic resync, the resync of the replicaset enqueues it anyway.
+            return false;
+        }
+        return !Objects.equals(oldPod.getMetadata().getLabels(), newPod.getMetadata().getLabels())
+                || !Objects.equals(oldPod.getMetadata().getDeletionTimestamp(), newPod.getMetadata().getDeletionTimestamp())
+                || !Objects.equals(oldPod.getMetadata().getOwnerReferences(), newPod.getMetadata().getOwnerReferences())
+                || !Objects.equals(oldPod.getStatus().getPhase(), newPod.getStatus().getPhase())
+                || Utils.isPodReady(oldPod) != Utils.isPodReady(newPod);
     }
 
     // the filter only applies for DELETE event from pod.
-    // the method must be public-access.
-    @DeleteWatchEventFilter(apiTypeClass = V1Pod.class)
     public boolean onDeleteFilter(V1Pod pod, Boolean cacheStatusUnknown) {
-        return Utils.getReplicaSetControllerOwnerRef(pod) != null;
+        V1OwnerReference ref = Utils.getReplicaSetControllerOwnerRef(pod);
+        if (ref == null) {
+            return false;
+        }
+        this.controllerExpectations.deletionObserved(
+                Utils.getKey(pod.getMetadata().getNamespace(), ref.getName()),
+                Utils.getKey(pod.getMetadata().getNamespace(), pod.getMetadata().getName()));
+        return true;
+    }
+
+    // the lanes of the priority work-queue the pod/replicaset events go to, null drops the event.
+    // the pod deletions and the replicaset spec changes go ahead of the resyncs and the status-only changes.
+    public Lane podAddLane(V1Pod pod) {
+        return onAddFilter(pod) ? Lane.NORMAL : null;
+    }
+
+    public Lane podUpdateLane(V1Pod oldPod, V1Pod newPod) {
+        return onUpdateFilter(oldPod, newPod) ? relevantPodUpdateLane(oldPod, newPod) : null;
+    }
+
+    // the lane of a pod update which passed the update filter.
+    static Lane relevantPodUpdateLane(V1Pod oldPod, V1Pod newPod) {
+        if (oldPod.getMetadata().getDeletionTimestamp() == null && newPod.getMetadata().getDeletionTimestamp() != null) {
+            return Lane.HIGH;
+        }
+        return Lane.NORMAL;
+    }
+
+    // returns the former owner of the pod if its controller-ref changed, the former owner needs to recount
+    // its replicas as well. returns null otherwise.
+    public static Request podFormerOwner(V1Pod oldPod, V1Pod newPod) {
+        V1OwnerReference oldRef = Utils.getReplicaSetControllerOwnerRef(oldPod);
+        if (oldRef == null) {
+            return null;
+        }
+        V1OwnerReference newRef = Utils.getReplicaSetControllerOwnerRef(newPod);
+        if (newRef != null && oldRef.getUid().equals(newRef.getUid())) {
+            return null;
+        }
+        return new Request(oldPod.getMetadata().getNamespace(), oldRef.getName());
+    }
+
+    public Lane podDeleteLane(V1Pod pod, Boolean cacheStatusUnknown) {
+        return onDeleteFilter(pod, cacheStatusUnknown) ? Lane.HIGH : null;
+    }
+
+    static Lane replicaSetUpdateLane(V1ReplicaSet oldRs, V1ReplicaSet newRs) {
+        if (Objects.equals(oldRs.getMetadata().getResourceVersion(), newRs.getMetadata().getResourceVersion())) {
+            // periodic resync
+            return Lane.LOW;
+        }
+        if (!Objects.equals(oldRs.getMetadata().getGeneration(), newRs.getMetadata().getGeneration())
+                || !Objects.equals(oldRs.getSpec().getReplicas(), newRs.getSpec().getReplicas())) {
+            return Lane.HIGH;
+        }
+        if (Objects.equals(oldRs.getMetadata().getLabels(), newRs.getMetadata().getLabels())
+                && Objects.equals(oldRs.getMetadata().getDeletionTimestamp(), newRs.getMetadata().getDeletionTimestamp())) {
+            // e.g. the status updates of the reconciler itself.
+            return Lane.LOW;
+        }
+        return Lane.NORMAL;
     }
 
     // the reconciler won't be dealing with reconciler-requests until the ready-func passes.
-    // the method must be public-access.
-    @KubernetesReconcilerReadyFunc
     public boolean informerCacheReady() {
         return podInformer.hasSynced() && rsInformer.hasSynced();
     }
 
+    // enqueues every replicaset owned by this replica, e.g. after the shards were rebalanced.
+    public void enqueueOwnedReplicaSets() {
+        for (V1ReplicaSet rs : this.rsLister.list()) {
+            if (this.shardCoordinator.owns(rs)) {
+                this.replicaSetWorkQueue.add(new Request(rs.getMetadata().getNamespace(), rs.getMetadata().getName()));
+            }
+        }
+    }
+
     // see the original go code at:
     // https://github.com/kubernetes/kubernetes/blob/master/pkg/controller/replicaset/replica_set.go
     public Result reconcile(Request request) {
-        logger.info("starting to reconcile replicaset {}", request);
+        logger.debug("starting to reconcile replicaset {}", request);
 
-        CoreV1Api coreV1Api = new CoreV1Api(apiClient);
-        AppsV1Api appsV1Api = new AppsV1Api(apiClient);
+        String rsKey = Utils.getKey(request.getNamespace(), request.getName());
         V1ReplicaSet rs = this.rsLister.namespace(request.getNamespace()).get(request.getName());
         if (rs == null) {
-            logger.info("replicaset {} already deleted", request);
+            logger.debug("replicaset {} already deleted", request);
+            this.controllerExpectations.deleteExpectations(rsKey);
             return new Result(false);
         }
-        List<V1Pod> allPods = this.podLister.namespace(request.getNamespace()).list();
+        if (!this.shardCoordinator.owns(rs)) {
+            logger.debug("replicaset {} is owned by another shard", request);
+            return new Result(false);
+        }
+        if (this.apiCallExecutor.isAsync() && this.inFlightReplicaSets.computeIfPresent(rsKey, (key, requested) -> Boolean.TRUE) != null) {
+            // reconciled again once the calls in flight complete, so that the calls of a replicaset never race.
+            logger.debug("replicaset {} still has api calls in flight", request);
+            return new Result(false);
+        }
+        // checks the expectations before listing the pods, otherwise a pod observed in between
+        // could be missed from the listing while still fulfilling the expectations.
+        boolean rsNeedsSync = this.controllerExpectations.satisfiedExpectations(rsKey);
+        ReplicaSetSelectorCache.Entry matchers;
+        try {
+            matchers = this.selectorCache.get(rs);
+        } catch (IllegalArgumentException e) {
+            // retrying won't help until the replicaset is updated.
+            logger.error("invalid selector of replicaset {}: {}", request, e.getMessage());
+            return new Result(false);
+        }
+        long listClaimStart = System.nanoTime();
+        List<V1Pod> allPods = this.controllerProperties.isIndexedPodLookup()
+                ? listOwnedAndOrphanPods(rs, matchers.getSelector())
+                : this.podLister.namespace(request.getNamespace()).list();
         List<V1Pod> filteredPods = filterActivePods(allPods);
+        List<V1Pod> adoptions = new ArrayList<>();
+        List<V1Pod> releases = new ArrayList<>();
+        filteredPods = claimPods(rs, matchers.getSelector(), filteredPods, adoptions, releases);
+        this.controllerMetrics.recordReconcilePhase(ControllerMetrics.PHASE_LIST_CLAIM, listClaimStart);
 
-        Executors.newSingleThreadExecutor().shutdown();
-        LabelSelector labelSelector = LabelSelector.and(rs.getSpec().getSelector().getMatchLabels()
-                .entrySet()
-                .stream()
-                .map(e -> EqualityMatcher.equal(e.getKey(), e.getValue()))
-                .toArray(LabelMatcher[]::new));
-
-        filteredPods = claimPods(rs, labelSelector, filteredPods);
-        int currentReplicas = filteredPods.size();
-        Throwable manageRsException = null;
-        if (rs.getSpec().getReplicas() == currentReplicas) {
-            logger.info("{}/{} already matches replicas expectation", request.getNamespace(), request.getName());
-
-        } else if (rs.getSpec().getReplicas() > currentReplicas) {
-            logger.info("{}/{} scaling up", request.getNamespace(), request.getName());
-            try {
-                coreV1Api.createNamespacedPod(rs.getMetadata().getNamespace(), getPodFromTemplate(rs), null, null, null);
-            } catch (ApiException e) {
-                logger.error("{}/{} failed scaling up: {}", request.getNamespace(), request.getName(), e.getResponseBody());
-                manageRsException = e;
+        if (!this.apiCallExecutor.isAsync()) {
+            // failed creations/deletions are retried with the per-replicaset backoff of the work-queue.
+            return new Result(syncReplicaSet(rsKey, rs, matchers, rsNeedsSync, filteredPods, adoptions, releases).join());
+        }
+        // the worker moves on to the next replicaset while the calls are in flight, the replicaset is
+        // requeued upon completion instead. throttling the worker rather than the calls, as the calls
+        // are continued from the callbacks of the previous calls.
+        this.apiCallExecutor.awaitCapacity();
+        this.inFlightReplicaSets.put(rsKey, Boolean.FALSE);
+        syncReplicaSet(rsKey, rs, matchers, rsNeedsSync, filteredPods, adoptions, releases).whenComplete((requeue, e) -> {
+            Boolean requested = this.inFlightReplicaSets.remove(rsKey);
+            if (!Boolean.FALSE.equals(requeue)) {
+                this.replicaSetWorkQueue.addAfter(request, this.asyncRequeueRateLimiter.when(request));
+                return;
             }
+            this.asyncRequeueRateLimiter.forget(request);
+            if (Boolean.TRUE.equals(requested)) {
+                this.replicaSetWorkQueue.add(request);
+            }
+        });
+        return new Result(false);
+    }
 
-        } else if (rs.getSpec().getReplicas() < currentReplicas) {
-            logger.info("{}/{} scaling down", request.getNamespace(), request.getName());
-            for (int i = 0; i < currentReplicas - rs.getSpec().getReplicas(); i++) {
-                V1Pod deletingPod = filteredPods.get(i);
-                try {
-                    coreV1Api.deleteNamespacedPod(deletingPod.getMetadata().getName(), deletingPod.getMetadata().getNamespace(), null, null, null, null, null, null);
-                } catch (ApiException e) {
-                    logger.error("{}/{} failed scaling down: {}", request.getNamespace(), request.getName(), e.getResponseBody());
-                    manageRsException = e;
-                } catch (JsonSyntaxException e) {
-                    // ignoring: https://github.com/kubernetes-client/java#known-issues
+    // adopts/releases the pods, manages the replicas and updates the status of the replicaset. completes
+    // with whether the replicaset needs to be retried with backoff.
+    private CompletableFuture<Boolean> syncReplicaSet(
+            String rsKey,
+            V1ReplicaSet rs,
+            ReplicaSetSelectorCache.Entry matchers,
+            boolean rsNeedsSync,
+            List<V1Pod> claimedPods,
+            List<V1Pod> adoptions,
+            List<V1Pod> releases) {
+        CompletableFuture<List<V1Pod>> claimed = adoptions.isEmpty() && releases.isEmpty()
+                ? CompletableFuture.completedFuture(claimedPods)
+                : adoptAndReleasePods(rsKey, rs, claimedPods, adoptions, releases);
+        return claimed.thenCompose(filteredPods -> {
+            if (filteredPods == null) {
+                // the pods failed adopting would be replaced by new pods, retrying with backoff instead.
+                return CompletableFuture.completedFuture(true);
+            }
+            CompletableFuture<ReplicaFailureException> managed;
+            if (rsNeedsSync) {
+                long manageReplicasStart = System.nanoTime();
+                managed = manageReplicas(rsKey, rs, filteredPods).whenComplete((failure, e) ->
+                        this.controllerMetrics.recordReconcilePhase(ControllerMetrics.PHASE_MANAGE_REPLICAS, manageReplicasStart));
+            } else {
+                logger.debug("{} is still waiting for the informer to observe its pod creations/deletions", rsKey);
+                managed = CompletableFuture.completedFuture(null);
+            }
+            return managed.thenCompose(manageRsException -> updateStatus(rsKey, rs, filteredPods, matchers, manageRsException)
+                    .thenApply(statusFailed -> statusFailed || manageRsException != null));
+        }).exceptionally(e -> {
+            logger.error("failed syncing replicaset {}", rsKey, e);
+            return true;
+        });
+    }
+
+    // updates the status subresource unless the calculated status is unchanged, completes with whether the update failed.
+    private CompletableFuture<Boolean> updateStatus(
+            String rsKey,
+            V1ReplicaSet rs,
+            List<V1Pod> filteredPods,
+            ReplicaSetSelectorCache.Entry matchers,
+            ReplicaFailureException manageRsException) {
+        logger.debug("calculating status subresource for {}", rsKey);
+        OffsetDateTime now = OffsetDateTime.now();
+        V1ReplicaSetStatus newStatus = this.calculateStatus(rs, filteredPods, matchers.getTemplateLabelsMatcher(), manageRsException, now);
+        Duration nextAvailable = nextAvailableIn(filteredPods, minReadySeconds(rs), now);
+        if (nextAvailable != null) {
+            // no pod event tells that a ready pod became available, waking up the replicaset at that time instead.
+            this.availabilityRequeueScheduler.schedule(
+                    new Request(rs.getMetadata().getNamespace(), rs.getMetadata().getName()), nextAvailable);
+        }
+        Map<String, Object> statusPatch = diffStatus(rs.getStatus(), newStatus);
+        if (statusPatch.isEmpty()) {
+            logger.debug("status subresource of replicaset {} is up-to-date, skipping the update", rsKey);
+            this.skippedStatusUpdates.incrementAndGet();
+            return CompletableFuture.completedFuture(false);
+        }
+        long statusWriteStart = System.nanoTime();
+        String patch = this.apiClient.getJSON().serialize(Collections.singletonMap("status", statusPatch));
+        return this.apiCallExecutor.<Void>patch(
+                () -> this.appsV1Api.patchNamespacedReplicaSetStatusCall(
+                        rs.getMetadata().getName(),
+                        rs.getMetadata().getNamespace(),
+                        new V1Patch(patch),
+                        null,
+                        null,
+                        null,
+                        null,
+                        null),
+                V1Patch.PATCH_FORMAT_JSON_MERGE_PATCH,
+                null)
+                .handle((patched, e) -> {
+                    Throwable error = unwrap(e);
+                    this.controllerMetrics.recordApiCall(ControllerMetrics.API_PATCH_STATUS, statusWriteStart, error);
+                    this.controllerMetrics.recordReconcilePhase(ControllerMetrics.PHASE_STATUS_WRITE, statusWriteStart);
+                    if (error != null) {
+                        logger.error("failed updating status subresource for replicaset {}: {}", rsKey, describeFailure(error));
+                        return true;
+                    }
+                    return false;
+                });
+    }
+
+
+    // lists the pods controlled by the replicaset plus the orphan pods that may be adopted by it
+    // from the indexes on the pod informer. the returned pods still need to be claimed.
+    @SuppressWarnings("unchecked")
+    private List<V1Pod> listOwnedAndOrphanPods(V1ReplicaSet rs, PodSelector selector) {
+        Indexer<V1Pod> podIndexer = ((SharedIndexInformer<V1Pod>) this.podInformer).getIndexer();
+        List<V1Pod> pods = new ArrayList<>(podIndexer.byIndex(PodIndexers.CONTROLLER_UID_INDEX, rs.getMetadata().getUid()));
+        // every matching pod must have the "key=value" label, so it's enough to find the candidates.
+        int requirement = selector.equalityRequirement();
+        if (requirement < 0) {
+            // no label to narrow the orphans down, falls back to the namespace scan.
+            for (V1Pod pod : this.podLister.namespace(rs.getMetadata().getNamespace()).list()) {
+                if (Utils.getReplicaSetControllerOwnerRef(pod) == null) {
+                    pods.add(pod);
+                }
+            }
+            return pods;
+        }
+        pods.addAll(podIndexer.byIndex(
+                PodIndexers.ORPHAN_LABEL_INDEX,
+                PodIndexers.orphanLabelIndexKey(rs.getMetadata().getNamespace(), selector.getKey(requirement), selector.getValue(requirement))));
+        return pods;
+    }
+
+    // patches the owner-references of the pods to adopt/release concurrently. the patches are preconditioned
+    // on the uid of the pod, so that a pod re-created under the same name is never adopted/released. completes
+    // with the claimed pods plus the adopted pods, or null if any adoption/release failed.
+    private CompletableFuture<List<V1Pod>> adoptAndReleasePods(
+            String rsKey,
+            V1ReplicaSet rs,
+            List<V1Pod> claimedPods,
+            List<V1Pod> adoptions,
+            List<V1Pod> releases) {
+        CompletableFuture<String> recheck = adoptions.isEmpty()
+                ? CompletableFuture.completedFuture(null)
+                : recheckAdoption(rs);
+        return recheck.thenCompose(recheckFailure -> {
+            List<String> failures = Collections.synchronizedList(new ArrayList<>());
+            List<V1Pod> claimed = Collections.synchronizedList(new ArrayList<>(claimedPods));
+            List<CompletableFuture<String>> futures = new ArrayList<>(adoptions.size() + releases.size());
+            if (recheckFailure != null) {
+                failures.add(recheckFailure);
+            } else {
+                for (V1Pod pod : adoptions) {
+                    futures.add(adoptPod(rsKey, rs, pod, claimed));
+                }
+            }
+            for (V1Pod pod : releases) {
+                futures.add(releasePod(rsKey, rs, pod));
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).<List<V1Pod>>thenApply(v -> {
+                futures.stream()
+                        .map(CompletableFuture::join)
+                        .filter(Objects::nonNull)
+                        .forEach(failures::add);
+                if (!failures.isEmpty()) {
+                    logger.error("replicaset {} failed claiming pods: {}", rsKey, new ReplicaFailureException("FailedClaim", failures).getMessage());
+                    return null;
                 }
+                return new ArrayList<>(claimed);
+            });
+        });
+    }
+
+    // reads the replicaset from the api-server rather than the informer cache before adopting, so that a
+    // replicaset deleted or re-created under the same name in the meantime doesn't adopt any pod.
+    // completes with the failure message, or null if the replicaset may adopt.
+    private CompletableFuture<String> recheckAdoption(V1ReplicaSet rs) {
+        long start = System.nanoTime();
+        return this.apiCallExecutor.<V1ReplicaSet>execute(
+                () -> this.appsV1Api.readNamespacedReplicaSetCall(rs.getMetadata().getName(), rs.getMetadata().getNamespace(), null, null, null, null),
+                V1ReplicaSet.class)
+                .handle((fresh, e) -> {
+                    Throwable error = unwrap(e);
+                    this.controllerMetrics.recordApiCall(ControllerMetrics.API_GET_REPLICASET, start, error);
+                    if (error != null) {
+                        return "failed rechecking replicaset before adopting: " + describeFailure(error);
+                    }
+                    if (!rs.getMetadata().getUid().equals(fresh.getMetadata().getUid())) {
+                        return "original replicaset is gone: got uid " + fresh.getMetadata().getUid() + ", wanted " + rs.getMetadata().getUid();
+                    }
+                    if (fresh.getMetadata().getDeletionTimestamp() != null) {
+                        return "replicaset is being deleted since " + fresh.getMetadata().getDeletionTimestamp();
+                    }
+                    return null;
+                });
+    }
+
+    // adds the controller reference of the replicaset to the pod, and the pod to the claimed pods once
+    // adopted. completes with the failure message, or null if the pod was adopted or is gone.
+    private CompletableFuture<String> adoptPod(String rsKey, V1ReplicaSet rs, V1Pod pod, List<V1Pod> claimed) {
+        String podKey = Utils.getKey(pod.getMetadata().getNamespace(), pod.getMetadata().getName());
+        logger.debug("replicaset {} adopting pod {}", rsKey, podKey);
+        long start = System.nanoTime();
+        return patchPod(pod, adoptionPatch(rs, pod)).handle((patched, e) -> {
+            Throwable error = unwrap(e);
+            this.controllerMetrics.recordApiCall(ControllerMetrics.API_ADOPT_POD, start, error);
+            if (error == null) {
+                claimed.add(pod);
+                return null;
+            }
+            if (error instanceof ApiException && ((ApiException) error).getCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                // already deleted, not adopted.
+                return null;
+            }
+            logger.error("{} failed adopting pod {}: {}", rsKey, podKey, describeFailure(error));
+            return "failed adopting pod " + podKey + ": " + describeFailure(error);
+        });
+    }
+
+    // removes the controller reference of the replicaset from the pod, completes with the failure
+    // message or null if the pod was released.
+    private CompletableFuture<String> releasePod(String rsKey, V1ReplicaSet rs, V1Pod pod) {
+        String podKey = Utils.getKey(pod.getMetadata().getNamespace(), pod.getMetadata().getName());
+        logger.debug("replicaset {} releasing pod {}", rsKey, podKey);
+        long start = System.nanoTime();
+        return patchPod(pod, releasePatch(rs, pod)).handle((patched, e) -> {
+            Throwable error = unwrap(e);
+            this.controllerMetrics.recordApiCall(ControllerMetrics.API_RELEASE_POD, start, error);
+            if (error == null) {
+                return null;
+            }
+            if (error instanceof ApiException
+                    && (((ApiException) error).getCode() == HttpURLConnection.HTTP_NOT_FOUND || ((ApiException) error).getCode() == HTTP_UNPROCESSABLE_ENTITY)) {
+                // the pod is gone or its owner-references changed in the meantime, either way
+                // it will be claimed again upon the next event.
+                logger.debug("{} skipped releasing pod {}: {}", rsKey, podKey, describeFailure(error));
+                return null;
             }
+            logger.error("{} failed releasing pod {}: {}", rsKey, podKey, describeFailure(error));
+            return "failed releasing pod " + podKey + ": " + describeFailure(error);
+        });
+    }
+
+    // the json-patch adding the controller reference of the replicaset to the orphan pod. the test of
+    // the uid keeps it from patching a pod re-created under the same name.
+    static List<Map<String, Object>> adoptionPatch(V1ReplicaSet rs, V1Pod pod) {
+        V1OwnerReference ref = new V1OwnerReference()
+                .apiVersion("apps/v1")
+                .kind("ReplicaSet")
+                .name(rs.getMetadata().getName())
+                .uid(rs.getMetadata().getUid())
+                .controller(true)
+                .blockOwnerDeletion(true);
+        List<Map<String, Object>> ops = new ArrayList<>();
+        ops.add(jsonPatchOp("test", "/metadata/uid", pod.getMetadata().getUid()));
+        if (pod.getMetadata().getOwnerReferences() == null || pod.getMetadata().getOwnerReferences().isEmpty()) {
+            // adding the whole list would overwrite the references added in the meantime.
+            ops.add(jsonPatchOp("test", "/metadata/resourceVersion", pod.getMetadata().getResourceVersion()));
+            ops.add(jsonPatchOp("add", "/metadata/ownerReferences", Collections.singletonList(ref)));
         } else {
-            // this line should never reach
+            // the api-server rejects a second controller reference, if the pod was adopted in the meantime.
+            ops.add(jsonPatchOp("add", "/metadata/ownerReferences/-", ref));
         }
+        return ops;
+    }
 
-        // calculating status
-        logger.info("calculating status subresource for {}", request);
-        V1ReplicaSetStatus newStatus = this.calculateStatus(rs, filteredPods, manageRsException);
-        V1ReplicaSet copied = new V1ReplicaSet()
-                .metadata(rs.getMetadata())
-                .spec(rs.getSpec())
-                .status(newStatus);
-        try {
-            appsV1Api.replaceNamespacedReplicaSetStatus(
-                    rs.getMetadata().getName(),
-                    rs.getMetadata().getNamespace(),
-                    copied,
-                    null,
-                    null,
-                    null);
-        } catch (ApiException e) {
-            logger.error("failed updating status subresource for replicaset {}/{}: {}", rs.getMetadata().getNamespace(), rs.getMetadata().getName(), e.getResponseBody());
-            return new Result(true);
+    // the json-patch removing the controller reference of the replicaset from the pod, failing if the
+    // references were re-ordered in the meantime.
+    static List<Map<String, Object>> releasePatch(V1ReplicaSet rs, V1Pod pod) {
+        List<V1OwnerReference> refs = pod.getMetadata().getOwnerReferences();
+        int index = 0;
+        while (!rs.getMetadata().getUid().equals(refs.get(index).getUid())) {
+            index++;
         }
+        List<Map<String, Object>> ops = new ArrayList<>();
+        ops.add(jsonPatchOp("test", "/metadata/uid", pod.getMetadata().getUid()));
+        ops.add(jsonPatchOp("test", "/metadata/ownerReferences/" + index + "/uid", rs.getMetadata().getUid()));
+        ops.add(jsonPatchOp("remove", "/metadata/ownerReferences/" + index, null));
+        return ops;
+    }
 
-        return new Result(false);
+    private CompletableFuture<Void> patchPod(V1Pod pod, List<Map<String, Object>> ops) {
+        String patch = this.apiClient.getJSON().serialize(ops);
+        return this.apiCallExecutor.patch(
+                () -> this.coreV1Api.patchNamespacedPodCall(
+                        pod.getMetadata().getName(),
+                        pod.getMetadata().getNamespace(),
+                        new V1Patch(patch),
+                        null,
+                        null,
+                        null,
+                        null,
+                        null),
+                V1Patch.PATCH_FORMAT_JSON_PATCH,
+                null);
+    }
+
+    private static Map<String, Object> jsonPatchOp(String op, String path, Object value) {
+        Map<String, Object> patchOp = new LinkedHashMap<>();
+        patchOp.put("op", op);
+        patchOp.put("path", path);
+        if (value != null) {
+            patchOp.put("value", value);
+        }
+        return patchOp;
     }
 
+    // creates/deletes pods so that the replicaset has the desired number of replicas. at most
+    // burstReplicas pods are created/deleted in one reconcile. completes with the failures, if any.
+    private CompletableFuture<ReplicaFailureException> manageReplicas(String rsKey, V1ReplicaSet rs, List<V1Pod> filteredPods) {
+        int diff = filteredPods.size() - rs.getSpec().getReplicas();
+        if (diff == 0) {
+            logger.debug("{} already matches replicas expectation", rsKey);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (diff < 0) {
+            int creations = Math.min(-diff, this.controllerProperties.getBurstReplicas());
+            logger.debug("{} scaling up by {} replicas", rsKey, creations);
+            // the expectations must be set before any creation is sent, otherwise the creation events
+            // may arrive before the expectations and be ignored.
+            this.controllerExpectations.expectCreations(rsKey, creations);
+            List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+            return slowStartBatch(creations, SLOW_START_INITIAL_BATCH_SIZE, () -> createPod(rsKey, rs), errors).thenApply(successes -> {
+                // the failed and the skipped creations will never be observed by the informer.
+                for (int i = 0; i < creations - successes; i++) {
+                    this.controllerExpectations.creationObserved(rsKey);
+                }
+                if (errors.isEmpty()) {
+                    return null;
+                }
+                return new ReplicaFailureException("FailedCreate", errors.stream()
+                        .map(e -> "failed creating pod: " + describeFailure(e))
+                        .collect(Collectors.toList()));
+            });
+        }
 
-    private static List<V1Pod> filterActivePods(List<V1Pod> allPods) {
-        return allPods.stream()
-                .filter(Utils::isPodActive)
+        int deletions = Math.min(diff, this.controllerProperties.getBurstReplicas());
+        logger.debug("{} scaling down by {} replicas", rsKey, deletions);
+        List<V1Pod> deletingPods = getPodsToDelete(filteredPods, deletions);
+        this.controllerExpectations.expectDeletions(rsKey, deletingPods.stream()
+                .map(pod -> Utils.getKey(pod.getMetadata().getNamespace(), pod.getMetadata().getName()))
+                .collect(Collectors.toList()));
+        List<CompletableFuture<String>> futures = deletingPods.stream()
+                .map(deletingPod -> deletePod(rsKey, deletingPod))
                 .collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<String> failures = futures.stream()
+                    .map(CompletableFuture::join)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            return failures.isEmpty() ? null : new ReplicaFailureException("FailedDelete", failures);
+        });
     }
 
+    // creates a pod from the template of the replicaset, completes exceptionally if the creation failed.
+    private CompletableFuture<Void> createPod(String rsKey, V1ReplicaSet rs) {
+        long start = System.nanoTime();
+        return this.apiCallExecutor.<Void>execute(
+                () -> this.coreV1Api.createNamespacedPodCall(rs.getMetadata().getNamespace(), getPodFromTemplate(rs), null, null, null, null),
+                null)
+                .whenComplete((created, e) -> {
+                    Throwable error = unwrap(e);
+                    this.controllerMetrics.recordApiCall(ControllerMetrics.API_CREATE_POD, start, error);
+                    if (error != null) {
+                        logger.error("{} failed scaling up: {}", rsKey, describeFailure(error));
+                    }
+                });
+    }
 
-    private static List<V1Pod> claimPods(V1ReplicaSet rs, LabelSelector selector, List<V1Pod> pods) {
-        return pods.stream()
-                .filter(pod -> {
-                    V1OwnerReference ref = Utils.getReplicaSetControllerOwnerRef(pod);
-                    if (ref != null) {
-                        // try release
-                        if (!rs.getMetadata().getUid().equals(ref.getUid())) {
-                            // if it doesn't belong to this replicaset
-                            // ignore
-                            return false;
-                        }
-                        if (selector.apply(pod.getMetadata().getLabels())) {
-                            // if it matches the current labels
-                            // it's already successfully claimed
-                            // ignore
-                            return true;
-                        }
-                        if (rs.getMetadata().getDeletionTimestamp() != null) {
-                            // orphaning
-                            // ignore
-                            return false;
-                        }
-                        // do release
-                        logger.info("replicaset {}/{} releasing pod {}", rs.getMetadata().getNamespace(), rs.getMetadata().getName(), pod.getMetadata().getName());
-                    } else {
-                        // try adopt
-                        if (rs.getMetadata().getDeletionTimestamp() != null) {
-                            // orphaning
-                            // ignore
-                            return false;
-                        }
-                        if (!selector.apply(pod.getMetadata().getLabels())) {
-                            // if it doesn't matches the current labels
-                            // ignore
-                            return false;
-                        }
-                        if (pod.getMetadata().getDeletionTimestamp() != null) {
-                            // Ignore if the pod is being deleted
-                            return false;
-                        }
-                        // do adopt
-                        logger.info("replicaset {}/{} adopting pod {}", rs.getMetadata().getNamespace(), rs.getMetadata().getName(), pod.getMetadata().getName());
-                        return true;
+    // deletes the pod, completes with the failure message or null if the deletion succeeded.
+    private CompletableFuture<String> deletePod(String rsKey, V1Pod pod) {
+        String podKey = Utils.getKey(pod.getMetadata().getNamespace(), pod.getMetadata().getName());
+        long start = System.nanoTime();
+        // the response is discarded, which also avoids https://github.com/kubernetes-client/java#known-issues
+        return this.apiCallExecutor.<Void>execute(
+                () -> this.coreV1Api.deleteNamespacedPodCall(pod.getMetadata().getName(), pod.getMetadata().getNamespace(), null, null, null, null, null, null, null),
+                null)
+                .handle((deleted, e) -> {
+                    Throwable error = unwrap(e);
+                    this.controllerMetrics.recordApiCall(ControllerMetrics.API_DELETE_POD, start, error);
+                    if (error == null) {
+                        return null;
+                    }
+                    // the failed deletion will never be observed by the informer.
+                    this.controllerExpectations.deletionObserved(rsKey, podKey);
+                    if (error instanceof ApiException && ((ApiException) error).getCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                        // already deleted
+                        return null;
                     }
+                    logger.error("{} failed scaling down: {}", rsKey, describeFailure(error));
+                    return "failed deleting pod " + podKey + ": " + describeFailure(error);
+                });
+    }
+
+    // picks the cheapest pods to delete, see {@link ActivePodsComparator}.
+    private static List<V1Pod> getPodsToDelete(List<V1Pod> filteredPods, int deletions) {
+        List<V1Pod> rankedPods = new ArrayList<>(filteredPods);
+        rankedPods.sort(ActivePodsComparator.INSTANCE);
+        return rankedPods.subList(0, deletions);
+    }
+
+    private static String describeFailure(Throwable e) {
+        if (e instanceof ApiException) {
+            ApiException apiException = (ApiException) e;
+            return apiException.getCode() + " " + apiException.getResponseBody();
+        }
+        return String.valueOf(e);
+    }
+
+    // the futures chained upon a failed future complete with the failure wrapped.
+    private static Throwable unwrap(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            return e.getCause();
+        }
+        return e;
+    }
+
+    // calls fn for count times in batches of doubling size (1, 2, 4, ...), the calls of a batch are in flight
+    // concurrently. if any call of a batch fails, the remaining batches are skipped so that a systematic failure
+    // (e.g. quota exceeded) doesn't flood the api-server. completes with the number of successful calls.
+    static CompletableFuture<Integer> slowStartBatch(int count, int batchSize, Supplier<CompletableFuture<Void>> fn, List<Throwable> errors) {
+        int size = Math.min(count, batchSize);
+        if (size <= 0) {
+            return CompletableFuture.completedFuture(0);
+        }
+        List<CompletableFuture<Boolean>> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(fn.get().handle((result, e) -> {
+                if (e != null) {
+                    errors.add(unwrap(e));
                     return false;
-                })
+                }
+                return true;
+            }));
+        }
+        return CompletableFuture.allOf(batch.toArray(new CompletableFuture[0])).thenCompose(v -> {
+            int successes = (int) batch.stream().filter(CompletableFuture::join).count();
+            if (successes < size) {
+                return CompletableFuture.completedFuture(successes);
+            }
+            return slowStartBatch(count - size, 2 * size, fn, errors).thenApply(rest -> successes + rest);
+        });
+    }
+
+    static List<V1Pod> filterActivePods(List<V1Pod> allPods) {
+        return allPods.stream()
+                .filter(Utils::isPodActive)
                 .collect(Collectors.toList());
     }
 
+
+    // claims the pods for the replicaset: returns the pods controlled by the replicaset and matching its
+    // selector, and collects the orphan pods to adopt and the controlled pods to release. the adopted pods
+    // still need to be added to the returned pods once patched.
+    static List<V1Pod> claimPods(V1ReplicaSet rs, PodSelector selector, List<V1Pod> pods, List<V1Pod> adoptions, List<V1Pod> releases) {
+        List<V1Pod> claimed = new ArrayList<>(pods.size());
+        for (V1Pod pod : pods) {
+            V1OwnerReference ref = Utils.getReplicaSetControllerOwnerRef(pod);
+            if (ref != null) {
+                // try release
+                if (!rs.getMetadata().getUid().equals(ref.getUid())) {
+                    // if it doesn't belong to this replicaset
+                    // ignore
+                    continue;
+                }
+                if (selector.matches(pod.getMetadata().getLabels())) {
+                    // if it matches the current labels
+                    // it's already successfully claimed
+                    claimed.add(pod);
+                    continue;
+                }
+                if (rs.getMetadata().getDeletionTimestamp() != null) {
+                    // orphaning
+                    // ignore
+                    continue;
+                }
+                // do release
+                releases.add(pod);
+            } else {
+                // try adopt
+                if (rs.getMetadata().getDeletionTimestamp() != null) {
+                    // orphaning
+                    // ignore
+                    continue;
+                }
+                if (!selector.matches(pod.getMetadata().getLabels())) {
+                    // if it doesn't matches the current labels
+                    // ignore
+                    continue;
+                }
+                if (pod.getMetadata().getDeletionTimestamp() != null) {
+                    // Ignore if the pod is being deleted
+                    continue;
+                }
+                if (Utils.getControllerOwnerRef(pod) != null) {
+                    // Ignore if the pod is controlled by another kind of controller
+                    continue;
+                }
+                // do adopt
+                adoptions.add(pod);
+            }
+        }
+        return claimed;
+    }
+
     private static V1Pod getPodFromTemplate(V1ReplicaSet rs) {
         return new V1Pod().metadata(
                 new V1ObjectMeta()
@@ -240,14 +799,94 @@ public class ReplicaSetReconciler implements Reconciler {
                 .spec(rs.getSpec().getTemplate().getSpec());
     }
 
-    private V1ReplicaSetStatus calculateStatus(V1ReplicaSet rs, List<V1Pod> filterPods, Throwable manageReplicasException) {
+    // the number of status updates skipped because the calculated status didn't change.
+    public long getSkippedStatusUpdates() {
+        return this.skippedStatusUpdates.get();
+    }
+
+    // compares the status semantically, i.e. unset counters equal to zero and the conditions
+    // are compared regardless of their transition time, and returns the changed fields as
+    // a json merge-patch of the status. returns an empty map if nothing changed.
+    static Map<String, Object> diffStatus(V1ReplicaSetStatus oldStatus, V1ReplicaSetStatus newStatus) {
+        if (oldStatus == null) {
+            oldStatus = new V1ReplicaSetStatus();
+        }
+        Map<String, Object> patch = new LinkedHashMap<>();
+        diffCounter(patch, "replicas", oldStatus.getReplicas(), newStatus.getReplicas());
+        diffCounter(patch, "fullyLabeledReplicas", oldStatus.getFullyLabeledReplicas(), newStatus.getFullyLabeledReplicas());
+        diffCounter(patch, "readyReplicas", oldStatus.getReadyReplicas(), newStatus.getReadyReplicas());
+        diffCounter(patch, "availableReplicas", oldStatus.getAvailableReplicas(), newStatus.getAvailableReplicas());
+        diffCounter(patch, "observedGeneration", oldStatus.getObservedGeneration(), newStatus.getObservedGeneration());
+        List<V1ReplicaSetCondition> oldConditions = oldStatus.getConditions() == null ? Collections.emptyList() : oldStatus.getConditions();
+        List<V1ReplicaSetCondition> newConditions = newStatus.getConditions() == null ? Collections.emptyList() : newStatus.getConditions();
+        if (!conditionsEqual(oldConditions, newConditions)) {
+            // merge-patch replaces lists as a whole.
+            patch.put("conditions", newConditions);
+        }
+        return patch;
+    }
+
+    private static void diffCounter(Map<String, Object> patch, String field, Number oldValue, Number newValue) {
+        long oldCount = oldValue == null ? 0 : oldValue.longValue();
+        long newCount = newValue == null ? 0 : newValue.longValue();
+        if (oldCount != newCount) {
+            patch.put(field, newCount);
+        }
+    }
+
+    private static boolean conditionsEqual(List<V1ReplicaSetCondition> oldConditions, List<V1ReplicaSetCondition> newConditions) {
+        if (oldConditions.size() != newConditions.size()) {
+            return false;
+        }
+        for (int i = 0; i < oldConditions.size(); i++) {
+            V1ReplicaSetCondition oldCond = oldConditions.get(i);
+            V1ReplicaSetCondition newCond = newConditions.get(i);
+            if (!Objects.equals(oldCond.getType(), newCond.getType())
+                    || !Objects.equals(oldCond.getStatus(), newCond.getStatus())
+                    || !Objects.equals(oldCond.getReason(), newCond.getReason())
+                    || !Objects.equals(oldCond.getMessage(), newCond.getMessage())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int minReadySeconds(V1ReplicaSet rs) {
+        Integer minReadySeconds = rs.getSpec().getMinReadySeconds();
+        return minReadySeconds == null ? 0 : minReadySeconds;
+    }
+
+    // returns how long until the next of the ready pods becomes available, or null if none is pending.
+    static Duration nextAvailableIn(List<V1Pod> pods, int minReadySeconds, OffsetDateTime now) {
+        if (minReadySeconds == 0) {
+            return null;
+        }
+        OffsetDateTime next = null;
+        for (V1Pod pod : pods) {
+            OffsetDateTime availableAt = Utils.availableAt(pod, minReadySeconds);
+            if (availableAt != null && availableAt.isAfter(now) && (next == null || availableAt.isBefore(next))) {
+                next = availableAt;
+            }
+        }
+        return next == null ? null : Duration.between(now, next);
+    }
+
+    V1ReplicaSetStatus calculateStatus(
+            V1ReplicaSet rs,
+            List<V1Pod> filterPods,
+            ReplicaSetSelectorCache.TemplateLabelsMatcher templateLabelsMatcher,
+            ReplicaFailureException manageReplicasException,
+            OffsetDateTime now) {
         V1ReplicaSetStatus newStatus = new V1ReplicaSetStatus()
                 .replicas(rs.getStatus().getReplicas())
                 .readyReplicas(rs.getStatus().getReadyReplicas())
                 .availableReplicas(rs.getStatus().getAvailableReplicas())
                 .fullyLabeledReplicas(rs.getStatus().getFullyLabeledReplicas())
-                .conditions(rs.getStatus().getConditions())
-                .observedGeneration(rs.getStatus().getObservedGeneration());
+                // copying the conditions, the replicaset is shared with the informer cache.
+                .conditions(rs.getStatus().getConditions() == null
+                        ? new ArrayList<>()
+                        : new ArrayList<>(rs.getStatus().getConditions()))
+                .observedGeneration(rs.getMetadata().getGeneration());
 
         // Count the number of pods that have labels matching the labels of the pod
         // template of the replica set, the matching pods may have more
@@ -257,29 +896,27 @@ public class ReplicaSetReconciler implements Reconciler {
         int fullyLabeledReplicasCount = 0;
         int readyReplicasCount = 0;
         int availableReplicasCount = 0;
-        Map<String, String> templateLabels = rs.getSpec().getTemplate().getMetadata().getLabels();
+        int minReadySeconds = minReadySeconds(rs);
         for (V1Pod pod : filterPods) {
-            if (Maps.difference(pod.getMetadata().getLabels(), templateLabels).areEqual()) {
+            if (templateLabelsMatcher.matches(pod.getMetadata().getLabels())) {
                 fullyLabeledReplicasCount++;
             }
             if (Utils.isPodReady(pod)) {
                 readyReplicasCount++;
+                if (Utils.isPodAvailable(pod, minReadySeconds, now)) {
+                    availableReplicasCount++;
+                }
             }
         }
 
         V1ReplicaSetCondition replicaFailureCond = Utils.getReplicaSetCondition(rs, "ReplicaFailure");
         if (manageReplicasException != null && replicaFailureCond == null) {
-            String reason = "";
-            if (rs.getSpec().getReplicas() > filterPods.size()) {
-                reason = "FailedCreate";
-            }
-            if (rs.getSpec().getReplicas() < filterPods.size()) {
-                reason = "FailedDelete";
-            }
             newStatus.getConditions().add(new V1ReplicaSetCondition()
                     .type("ReplicaFailure")
-                    .status("False")
-                    .reason(reason));
+                    .status("True")
+                    .reason(manageReplicasException.getReason())
+                    .message(manageReplicasException.getMessage())
+                    .lastTransitionTime(OffsetDateTime.now()));
         } else if (manageReplicasException == null && replicaFailureCond != null) {
             newStatus.conditions(newStatus.getConditions().stream()
                     .filter(cond -> !"ReplicaFailure".equals(cond.getType()))
@@ -288,7 +925,7 @@ public class ReplicaSetReconciler implements Reconciler {
         newStatus.replicas(filterPods.size())
                 .fullyLabeledReplicas(fullyLabeledReplicasCount)
                 .readyReplicas(readyReplicasCount)
-                .availableReplicas(readyReplicasCount); //TODO: calculate available replicas
+                .availableReplicas(availableReplicasCount);
         return newStatus;
     }
 }
@@ -0,0 +1,106 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.informer.ResourceEventHandler;
+import io.kubernetes.client.openapi.models.V1ReplicaSet;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Caches the compiled selector and template-labels matcher of each replicaset by uid. an entry is
+// recompiled once the generation of the replicaset changes, i.e. upon spec updates, and evicted
+// once the replicaset is deleted.
+public class ReplicaSetSelectorCache {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public Entry get(V1ReplicaSet rs) {
+        String uid = rs.getMetadata().getUid();
+        Long generation = rs.getMetadata().getGeneration();
+        Entry entry = entries.get(uid);
+        if (entry != null && Objects.equals(entry.generation, generation)) {
+            return entry;
+        }
+        entry = new Entry(generation,
+                PodSelector.compile(rs.getSpec().getSelector()),
+                new TemplateLabelsMatcher(rs.getSpec().getTemplate().getMetadata().getLabels()));
+        entries.put(uid, entry);
+        return entry;
+    }
+
+    public void evict(String uid) {
+        entries.remove(uid);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // evicts the entries of the deleted replicasets.
+    public ResourceEventHandler<V1ReplicaSet> evictionHandler() {
+        return new ResourceEventHandler<V1ReplicaSet>() {
+            @Override
+            public void onAdd(V1ReplicaSet rs) {
+            }
+
+            @Override
+            public void onUpdate(V1ReplicaSet oldRs, V1ReplicaSet newRs) {
+            }
+
+            @Override
+            public void onDelete(V1ReplicaSet rs, boolean deletedFinalStateUnknown) {
+                evict(rs.getMetadata().getUid());
+            }
+        };
+    }
+
+    public static class Entry {
+        private final Long generation;
+        private final PodSelector selector;
+        private final TemplateLabelsMatcher templateLabelsMatcher;
+
+        private Entry(Long generation, PodSelector selector, TemplateLabelsMatcher templateLabelsMatcher) {
+            this.generation = generation;
+            this.selector = selector;
+            this.templateLabelsMatcher = templateLabelsMatcher;
+        }
+
+        public PodSelector getSelector() {
+            return selector;
+        }
+
+        public TemplateLabelsMatcher getTemplateLabelsMatcher() {
+            return templateLabelsMatcher;
+        }
+    }
+
+    // matches the pods labeled with all the labels of the pod template, the pods may have more labels.
+    public static class TemplateLabelsMatcher {
+        private final String[] keys;
+        private final String[] values;
+
+        TemplateLabelsMatcher(Map<String, String> templateLabels) {
+            int size = templateLabels == null ? 0 : templateLabels.size();
+            this.keys = new String[size];
+            this.values = new String[size];
+            if (templateLabels != null) {
+                int i = 0;
+                for (Map.Entry<String, String> label : templateLabels.entrySet()) {
+                    keys[i] = label.getKey();
+                    values[i] = label.getValue();
+                    i++;
+                }
+            }
+        }
+
+        public boolean matches(Map<String, String> labels) {
+            for (int i = 0; i < keys.length; i++) {
+                if (labels == null || !values[i].equals(labels.get(keys[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
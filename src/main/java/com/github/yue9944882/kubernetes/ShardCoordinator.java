@@ -0,0 +1,362 @@
+package com.github.yue9944882.kubernetes;
+
+import com.google.common.hash.Hashing;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.apis.CoordinationV1Api;
+import io.kubernetes.client.openapi.models.V1DeleteOptions;
+import io.kubernetes.client.openapi.models.V1Lease;
+import io.kubernetes.client.openapi.models.V1LeaseList;
+import io.kubernetes.client.openapi.models.V1LeaseSpec;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Preconditions;
+import io.kubernetes.client.openapi.models.V1ReplicaSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+// Spreads the replicasets over the controller replicas of a shard group. every replica renews its own
+// lease in the group, and the replicas whose leases are renewed within the lease duration are the members.
+// a replicaset is owned by one member, picked by rendezvous hashing over its namespace/uid so that only
+// the replicasets of the joining/leaving member move upon rebalancing.
+//
+// the members publish the membership they observe on their leases. a new membership only takes effect
+// once all the members published it, in between a replica only reconciles the replicasets it owns under
+// both the last agreed and the new membership. a replica failing to renew its lease stops reconciling
+// before the others may consider it gone, and once renewing again owns nothing until the members agree.
+// so a replicaset is never owned by two replicas at once, and the moving replicasets pause for about one
+// renew period. the leases of the members that crashed are deleted by the others once expired for several
+// lease durations.
+public class ShardCoordinator {
+
+    private final static Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    static final String SHARD_GROUP_LABEL = "replicaset-controller/shard-group";
+
+    static final String SHARD_MEMBERS_ANNOTATION = "replicaset-controller/shard-members";
+
+    // the leases not renewed for this many lease durations are deleted, as the members that crashed
+    // never delete their leases.
+    static final int EXPIRED_LEASE_DURATIONS = 5;
+
+    private final boolean enabled;
+
+    private final CoordinationV1Api coordinationV1Api;
+
+    private final String namespace;
+
+    private final String group;
+
+    private final String identity;
+
+    private final Duration leaseDuration;
+
+    private final Duration renewPeriod;
+
+    // the resource-version last seen on each member's lease and the local time it was seen at, so that
+    // the liveness of the members doesn't depend on their clocks. every write of a lease is a renewal.
+    private final Map<String, ObservedRenewal> observedRenewals = new HashMap<>();
+
+    private volatile Ownership ownership = new Ownership(Collections.emptyList(), Collections.emptyList());
+
+    // the local time the last successful renewal was started at.
+    private volatile long renewedNanos;
+
+    // the local clock, in nanoseconds.
+    private final LongSupplier ticker;
+
+    private ScheduledExecutorService scheduler;
+
+    public ShardCoordinator(
+            boolean enabled,
+            ApiClient apiClient,
+            String namespace,
+            String group,
+            String identity,
+            Duration leaseDuration,
+            Duration renewPeriod) {
+        this(enabled, apiClient, namespace, group, identity, leaseDuration, renewPeriod, System::nanoTime);
+    }
+
+    ShardCoordinator(
+            boolean enabled,
+            ApiClient apiClient,
+            String namespace,
+            String group,
+            String identity,
+            Duration leaseDuration,
+            Duration renewPeriod,
+            LongSupplier ticker) {
+        this.enabled = enabled;
+        this.coordinationV1Api = new CoordinationV1Api(apiClient);
+        this.namespace = namespace;
+        this.group = group;
+        this.identity = identity;
+        this.leaseDuration = leaseDuration;
+        this.renewPeriod = renewPeriod;
+        this.ticker = ticker;
+        this.renewedNanos = ticker.getAsLong() - leaseDuration.toNanos();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getIdentity() {
+        return identity;
+    }
+
+    public int getMemberCount() {
+        return ownership.current.size();
+    }
+
+    // returns true if the replicaset is reconciled by this replica. always true if sharding is disabled.
+    public boolean owns(V1ReplicaSet rs) {
+        if (!enabled) {
+            return true;
+        }
+        if (ticker.getAsLong() - renewedNanos >= leaseDuration.toNanos()) {
+            // the other members may have taken over already.
+            return false;
+        }
+        Ownership current = this.ownership;
+        String key = Utils.getKey(rs.getMetadata().getNamespace(), rs.getMetadata().getUid());
+        return identity.equals(owner(current.current, key)) && identity.equals(owner(current.agreed, key));
+    }
+
+    // starts renewing the lease, the callback is invoked whenever this replica may own new replicasets.
+    public synchronized void start(Runnable onRebalance) {
+        if (!enabled || scheduler != null) {
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.scheduler.scheduleWithFixedDelay(() -> renew(onRebalance), 0, renewPeriod.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("joining shard group {} as {}", group, identity);
+    }
+
+    // stops renewing and deletes the lease so that the other members take over without waiting for it to expire.
+    public synchronized void stop() {
+        if (!enabled) {
+            return;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                // a renewal in progress would re-create the lease.
+                scheduler.awaitTermination(renewPeriod.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        ownership = new Ownership(Collections.emptyList(), Collections.emptyList());
+        try {
+            coordinationV1Api.deleteNamespacedLease(leaseName(), namespace, null, null, null, null, null, null);
+        } catch (ApiException e) {
+            if (e.getCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+                logger.warn("failed deleting shard lease {}/{}: {}", namespace, leaseName(), e.getResponseBody());
+            }
+        }
+    }
+
+    void renew(Runnable onRebalance) {
+        long started = ticker.getAsLong();
+        try {
+            V1LeaseList leases = coordinationV1Api.listNamespacedLease(
+                    namespace, null, null, null, null, SHARD_GROUP_LABEL + "=" + group, null, null, null, null);
+            List<String> observed = liveMembers(leases.getItems());
+            boolean agreed = true;
+            for (V1Lease lease : leases.getItems()) {
+                String member = lease.getSpec().getHolderIdentity();
+                if (!identity.equals(member) && observed.contains(member)) {
+                    String published = lease.getMetadata().getAnnotations() == null
+                            ? null
+                            : lease.getMetadata().getAnnotations().get(SHARD_MEMBERS_ANNOTATION);
+                    agreed &= String.join(",", observed).equals(published);
+                }
+            }
+            Ownership previous = this.ownership;
+            // narrowing the ownership down to the intersection before publishing the new membership,
+            // the others may take over the moving replicasets as soon as they see it published.
+            Ownership next = agreed
+                    ? new Ownership(observed, observed)
+                    : new Ownership(observed, previous.agreed);
+            this.ownership = next;
+            renewLease(leases.getItems(), observed);
+            boolean lapsed = ticker.getAsLong() - this.renewedNanos >= leaseDuration.toNanos();
+            if (lapsed && !agreed) {
+                // the others may have agreed upon a membership without this replica while its ownership
+                // lapsed, so the last agreed membership is stale.
+                next = new Ownership(observed, Collections.emptyList());
+                this.ownership = next;
+            }
+            this.renewedNanos = started;
+            deleteExpiredLeases(leases.getItems());
+            if (!next.equals(previous)) {
+                logger.info("shard group {} rebalanced, members {}, agreed {}", group, observed, agreed);
+                onRebalance.run();
+            } else if (lapsed) {
+                // the replicasets dequeued while the ownership lapsed were dropped.
+                logger.info("shard group {} lease of {} regained, members {}", group, identity, observed);
+                onRebalance.run();
+            }
+        } catch (ApiException e) {
+            logger.error("failed renewing shard lease {}/{}: {}", namespace, leaseName(), e.getResponseBody());
+        } catch (RuntimeException e) {
+            logger.error("failed renewing shard lease {}/{}", namespace, leaseName(), e);
+        }
+    }
+
+    private List<String> liveMembers(List<V1Lease> leases) {
+        long now = ticker.getAsLong();
+        List<String> members = new ArrayList<>();
+        members.add(identity);
+        observedRenewals.keySet().retainAll(leases.stream()
+                .map(lease -> lease.getSpec().getHolderIdentity())
+                .collect(Collectors.toSet()));
+        for (V1Lease lease : leases) {
+            String member = lease.getSpec().getHolderIdentity();
+            if (member == null || identity.equals(member)) {
+                continue;
+            }
+            String resourceVersion = lease.getMetadata().getResourceVersion();
+            ObservedRenewal renewal = observedRenewals.get(member);
+            if (renewal == null || !Objects.equals(renewal.resourceVersion, resourceVersion)) {
+                renewal = new ObservedRenewal(resourceVersion, now);
+                observedRenewals.put(member, renewal);
+            }
+            if (now - renewal.observedNanos < leaseDuration.toNanos()) {
+                members.add(member);
+            }
+        }
+        Collections.sort(members);
+        return members;
+    }
+
+    private void renewLease(List<V1Lease> leases, List<String> observed) throws ApiException {
+        V1Lease lease = leases.stream()
+                .filter(l -> leaseName().equals(l.getMetadata().getName()))
+                .findFirst()
+                .orElse(null);
+        OffsetDateTime now = OffsetDateTime.now();
+        if (lease == null) {
+            coordinationV1Api.createNamespacedLease(namespace, new V1Lease()
+                    .metadata(new V1ObjectMeta()
+                            .name(leaseName())
+                            .namespace(namespace)
+                            .labels(Collections.singletonMap(SHARD_GROUP_LABEL, group))
+                            .annotations(Collections.singletonMap(SHARD_MEMBERS_ANNOTATION, String.join(",", observed))))
+                    .spec(new V1LeaseSpec()
+                            .holderIdentity(identity)
+                            .leaseDurationSeconds((int) leaseDuration.getSeconds())
+                            .acquireTime(now)
+                            .renewTime(now)), null, null, null);
+            return;
+        }
+        lease.getMetadata().annotations(Collections.singletonMap(SHARD_MEMBERS_ANNOTATION, String.join(",", observed)));
+        lease.getSpec().renewTime(now);
+        coordinationV1Api.replaceNamespacedLease(leaseName(), namespace, lease, null, null, null);
+    }
+
+    // deletes the leases not renewed for several lease durations, as observed locally so
+    // that it doesn't depend on the clocks. the deletion is preconditioned on the resource-version listed,
+    // so that the lease of a member resuming in between isn't deleted.
+    private void deleteExpiredLeases(List<V1Lease> leases) {
+        long now = ticker.getAsLong();
+        for (V1Lease lease : leases) {
+            String member = lease.getSpec().getHolderIdentity();
+            ObservedRenewal renewal = observedRenewals.get(member);
+            if (identity.equals(member)
+                    || renewal == null
+                    || now - renewal.observedNanos < EXPIRED_LEASE_DURATIONS * leaseDuration.toNanos()) {
+                continue;
+            }
+            try {
+                coordinationV1Api.deleteNamespacedLease(
+                        lease.getMetadata().getName(), namespace, null, null, null, null, null,
+                        new V1DeleteOptions().preconditions(new V1Preconditions()
+                                .uid(lease.getMetadata().getUid())
+                                .resourceVersion(lease.getMetadata().getResourceVersion())));
+                observedRenewals.remove(member);
+                logger.info("deleted the expired shard lease {}/{} of {}", namespace, lease.getMetadata().getName(), member);
+            } catch (ApiException e) {
+                if (e.getCode() != HttpURLConnection.HTTP_CONFLICT && e.getCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+                    logger.warn("failed deleting the expired shard lease {}/{}: {}", namespace, lease.getMetadata().getName(), e.getResponseBody());
+                }
+            }
+        }
+    }
+
+    private String leaseName() {
+        return group + "-" + identity;
+    }
+
+    // rendezvous hashing: the member with the highest hash of member+key owns the key.
+    static String owner(List<String> members, String key) {
+        String owner = null;
+        long highest = Long.MIN_VALUE;
+        for (String member : members) {
+            long hash = Hashing.murmur3_128().hashString(member + "/" + key, StandardCharsets.UTF_8).asLong();
+            if (owner == null || hash > highest) {
+                owner = member;
+                highest = hash;
+            }
+        }
+        return owner;
+    }
+
+    private static class ObservedRenewal {
+        private final String resourceVersion;
+        private final long observedNanos;
+
+        private ObservedRenewal(String resourceVersion, long observedNanos) {
+            this.resourceVersion = resourceVersion;
+            this.observedNanos = observedNanos;
+        }
+    }
+
+    // a replica owns the keys it owns under both the current and the last agreed membership,
+    // which are the same once the members agree upon the current membership.
+    private static class Ownership {
+        private final List<String> current;
+        private final List<String> agreed;
+
+        private Ownership(List<String> current, List<String> agreed) {
+            this.current = current;
+            this.agreed = agreed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Ownership)) {
+                return false;
+            }
+            Ownership that = (Ownership) o;
+            return current.equals(that.current) && agreed.equals(that.agreed);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{current, agreed});
+        }
+    }
+}
@@ -2,13 +2,22 @@ package com.github.yue9944882.kubernetes;
 
 import io.kubernetes.client.openapi.models.*;
 
+import java.time.OffsetDateTime;
+
 public class Utils {
 
+    public static String getKey(String namespace, String name) {
+        return namespace + "/" + name;
+    }
+
     public static V1OwnerReference getReplicaSetControllerOwnerRef(V1Pod pod) {
+        if (pod.getMetadata().getOwnerReferences() == null) {
+            return null;
+        }
         return pod.getMetadata().getOwnerReferences()
                 .stream()
                 .filter(ownerRef -> {
-                    if (!ownerRef.getController()) {
+                    if (!Boolean.TRUE.equals(ownerRef.getController())) {
                         return false;
                     }
                     if (!"apps/v1".equals(ownerRef.getApiVersion())) {
@@ -23,6 +32,18 @@ public class Utils {
                 .orElse(null);
     }
 
+    // returns the controller reference of any kind, if any.
+    public static V1OwnerReference getControllerOwnerRef(V1Pod pod) {
+        if (pod.getMetadata().getOwnerReferences() == null) {
+            return null;
+        }
+        return pod.getMetadata().getOwnerReferences()
+                .stream()
+                .filter(ownerRef -> Boolean.TRUE.equals(ownerRef.getController()))
+                .findFirst()
+                .orElse(null);
+    }
+
     public static boolean isPodActive(V1Pod pod) {
         return !"Succeeded".equals(pod.getStatus().getPhase())
                 && !"Failed".equals(pod.getStatus().getPhase())
@@ -38,6 +59,28 @@ public class Utils {
         return "True".equals(podCondition.getStatus());
     }
 
+    // a pod is available once it's been ready for at least the min-ready-seconds.
+    public static boolean isPodAvailable(V1Pod pod, int minReadySeconds, OffsetDateTime now) {
+        OffsetDateTime availableAt = availableAt(pod, minReadySeconds);
+        return availableAt != null && !availableAt.isAfter(now);
+    }
+
+    // returns the time the ready pod becomes available, or null if the pod isn't ready or its ready transition
+    // time is unknown. like kubernetes, a pod is available strictly after its ready transition plus the min-ready-seconds.
+    public static OffsetDateTime availableAt(V1Pod pod, int minReadySeconds) {
+        V1PodCondition podCondition = getPodCondition(pod, "Ready");
+        if (podCondition == null || !"True".equals(podCondition.getStatus())) {
+            return null;
+        }
+        if (minReadySeconds == 0) {
+            return OffsetDateTime.MIN;
+        }
+        if (podCondition.getLastTransitionTime() == null) {
+            return null;
+        }
+        return podCondition.getLastTransitionTime().plusSeconds(minReadySeconds).plusNanos(1);
+    }
+
     public static V1PodCondition getPodCondition(V1Pod pod, String type) {
         if (pod.getStatus().getConditions() == null) {
             return null;
@@ -1,41 +1,176 @@
 package com.github.yue9944882.kubernetes.config;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+import com.github.yue9944882.kubernetes.ApiCallExecutor;
+import com.github.yue9944882.kubernetes.ControllerExpectations;
+import com.github.yue9944882.kubernetes.ControllerMetrics;
+import com.github.yue9944882.kubernetes.DefaultPriorityRateLimitingQueue;
+import com.github.yue9944882.kubernetes.EventCoalescer;
+import com.github.yue9944882.kubernetes.HashedWheelScheduler;
+import com.github.yue9944882.kubernetes.InstrumentedWorkQueue;
+import com.github.yue9944882.kubernetes.PodIndexers;
+import com.github.yue9944882.kubernetes.PodListerWatcher;
+import com.github.yue9944882.kubernetes.PodWorkQueueKeyFunc;
+import com.github.yue9944882.kubernetes.PrioritizedControllerWatch;
+import com.github.yue9944882.kubernetes.PriorityRateLimitingQueue;
+import com.github.yue9944882.kubernetes.ReplicaSetListerWatcher;
 import com.github.yue9944882.kubernetes.ReplicaSetReconciler;
+import com.github.yue9944882.kubernetes.ReplicaSetSelectorCache;
+import com.github.yue9944882.kubernetes.ShardCoordinator;
 import io.kubernetes.client.extended.controller.Controller;
 import io.kubernetes.client.extended.controller.ControllerManager;
+import io.kubernetes.client.extended.controller.builder.ControllerBuilder;
+import io.kubernetes.client.extended.controller.reconciler.Request;
+import io.kubernetes.client.extended.leaderelection.LeaderElectionConfig;
+import io.kubernetes.client.extended.leaderelection.LeaderElector;
+import io.kubernetes.client.extended.leaderelection.resourcelock.LeaseLock;
+import io.kubernetes.client.extended.workqueue.ratelimiter.BucketRateLimiter;
+import io.kubernetes.client.extended.workqueue.ratelimiter.ItemExponentialFailureRateLimiter;
+import io.kubernetes.client.extended.workqueue.ratelimiter.MaxOfRateLimiter;
+import io.kubernetes.client.extended.workqueue.ratelimiter.RateLimiter;
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.SharedInformer;
 import io.kubernetes.client.informer.SharedInformerFactory;
+import io.kubernetes.client.informer.cache.Lister;
 import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.apis.AppsV1Api;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
 import io.kubernetes.client.openapi.models.V1Pod;
-import io.kubernetes.client.openapi.models.V1PodList;
 import io.kubernetes.client.openapi.models.V1ReplicaSet;
-import io.kubernetes.client.openapi.models.V1ReplicaSetList;
-import io.kubernetes.client.spring.extended.controller.annotation.GroupVersionResource;
-import io.kubernetes.client.spring.extended.controller.annotation.KubernetesInformer;
-import io.kubernetes.client.spring.extended.controller.annotation.KubernetesInformers;
-import io.kubernetes.client.spring.extended.controller.factory.KubernetesControllerFactory;
 import io.kubernetes.client.util.ClientBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Dispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
 @Configuration
+@EnableConfigurationProperties(ControllerProperties.class)
 public class ControllerConfiguration {
 
+    private final static Logger logger = LoggerFactory.getLogger(ControllerConfiguration.class);
+
     @Bean
     public ApiClient kubernetesSharedClient() throws IOException {
         return ClientBuilder.defaultClient(); // The apiClient used by informer-factory.
     }
 
     @Bean
-    public SharedInformerFactory sharedInformerFactory() {
-        // Registering informer-factory so that the processor {@link io.kubernetes.client.spring.extended.controller.KubernetesInformerFactoryProcessor}
-        // automatically provisions the annotated informers.
-        return new ControllerSharedInformerFactory();
+    public SharedInformerFactory sharedInformerFactory(ApiClient apiClient, Environment environment) {
+        // Registering informer-factory so that the informers are provisioned before the processor
+        // {@link io.kubernetes.client.spring.extended.controller.KubernetesInformerFactoryProcessor} wires the controller.
+        SharedInformerFactory sharedInformerFactory = new SharedInformerFactory();
+        // The factory is instantiated by the processor before the configuration-properties are bound,
+        // so the properties are bound from the environment here.
+        ControllerProperties controllerProperties = Binder.get(environment)
+                .bind("replicaset-controller", ControllerProperties.class)
+                .orElseGet(ControllerProperties::new);
+        // Adding a pod-informer to the factory for list-watching pod resources, optionally caching
+        // the slim projections of the pods.
+        sharedInformerFactory.sharedIndexInformerFor(
+                new PodListerWatcher(
+                        apiClient,
+                        controllerProperties.isSlimPodCache(),
+                        controllerProperties.getListPageSize(),
+                        controllerProperties.isProtobufPodList()),
+                V1Pod.class,
+                controllerProperties.getResyncPeriod().toMillis());
+        // Adding a replicaset-informer to the factory for list-watching replicaset resources.
+        sharedInformerFactory.sharedIndexInformerFor(
+                new ReplicaSetListerWatcher(apiClient, controllerProperties.getListPageSize()),
+                V1ReplicaSet.class,
+                controllerProperties.getResyncPeriod().toMillis());
+        return sharedInformerFactory;
+    }
+
+    @Bean
+    public SharedInformer<V1Pod> podInformer(SharedInformerFactory sharedInformerFactory) {
+        return sharedInformerFactory.getExistingSharedIndexInformer(V1Pod.class);
+    }
+
+    @Bean
+    public Lister<V1Pod> podLister(SharedInformerFactory sharedInformerFactory) {
+        return new Lister<>(sharedInformerFactory.getExistingSharedIndexInformer(V1Pod.class).getIndexer());
+    }
+
+    @Bean
+    public SharedInformer<V1ReplicaSet> replicaSetInformer(SharedInformerFactory sharedInformerFactory) {
+        return sharedInformerFactory.getExistingSharedIndexInformer(V1ReplicaSet.class);
+    }
+
+    @Bean
+    public Lister<V1ReplicaSet> replicaSetLister(SharedInformerFactory sharedInformerFactory) {
+        return new Lister<>(sharedInformerFactory.getExistingSharedIndexInformer(V1ReplicaSet.class).getIndexer());
+    }
+
+    @Bean
+    public ControllerExpectations controllerExpectations(ControllerProperties controllerProperties) {
+        return new ControllerExpectations(controllerProperties.getExpectationsTimeout());
+    }
+
+    @Bean(value = "pod-control-executor", destroyMethod = "shutdown")
+    public ExecutorService podControlExecutor(ControllerProperties controllerProperties) {
+        // Bounds the api calls in flight across all the reconciler workers in the blocking mode.
+        return Executors.newFixedThreadPool(controllerProperties.getPodControlParallelism());
+    }
+
+    @Bean
+    public CoreV1Api coreV1Api(ApiClient apiClient) {
+        return new CoreV1Api(apiClient);
+    }
+
+    @Bean
+    public AppsV1Api appsV1Api(ApiClient apiClient) {
+        return new AppsV1Api(apiClient);
+    }
+
+    @Bean
+    public ApiCallExecutor apiCallExecutor(
+            ApiClient apiClient,
+            ControllerProperties controllerProperties,
+            @Qualifier("pod-control-executor") ExecutorService podControlExecutor) {
+        boolean async = controllerProperties.getApiMode() == ControllerProperties.ApiMode.ASYNC;
+        if (async) {
+            // The okhttp dispatcher only runs 5 async calls per host by default, queueing the rest. Leaving
+            // headroom above the in-flight permits, so that the permitted calls never wait in the dispatcher
+            // behind the other async calls of the shared api-client.
+            Dispatcher dispatcher = apiClient.getHttpClient().dispatcher();
+            int maxRequestsPerHost = 2 * controllerProperties.getMaxRequestsInFlight();
+            dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+            dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), maxRequestsPerHost));
+        }
+        return new ApiCallExecutor(
+                apiClient,
+                async,
+                podControlExecutor,
+                controllerProperties.getMaxRequestsInFlight(),
+                controllerProperties.getApiRequestTimeout());
+    }
+
+    @Bean("async-requeue-rate-limiter")
+    public RateLimiter<Request> asyncRequeueRateLimiter(ControllerProperties controllerProperties) {
+        return replicaSetRateLimiter(controllerProperties);
     }
 
     @Bean
@@ -43,44 +178,211 @@ public class ControllerConfiguration {
         return new ReplicaSetReconciler();
     }
 
+    @Bean(destroyMethod = "stop")
+    public ShardCoordinator shardCoordinator(ApiClient apiClient, ControllerProperties controllerProperties) throws UnknownHostException {
+        if (controllerProperties.isShardingEnabled() && controllerProperties.isLeaderElectionEnabled()) {
+            // a standby would still own its share of the replicasets, which no other replica reconciles.
+            throw new IllegalStateException("replicaset-controller.sharding-enabled and replicaset-controller.leader-election-enabled "
+                    + "are mutually exclusive: a sharded controller stays available as the other replicas take over "
+                    + "the replicasets of a failed one, enable either of them");
+        }
+        return new ShardCoordinator(
+                controllerProperties.isShardingEnabled(),
+                apiClient,
+                controllerProperties.getShardLeaseNamespace(),
+                controllerProperties.getShardGroup(),
+                replicaIdentity(controllerProperties.getShardIdentity()),
+                controllerProperties.getShardLeaseDuration(),
+                controllerProperties.getShardRenewPeriod());
+    }
+
+    private static String replicaIdentity(String configured) throws UnknownHostException {
+        if (configured == null || configured.isEmpty()) {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        return configured;
+    }
+
+    @Bean
+    public ReplicaSetSelectorCache replicaSetSelectorCache() {
+        return new ReplicaSetSelectorCache();
+    }
+
+    @Bean
+    public ControllerMetrics controllerMetrics(MeterRegistry meterRegistry) {
+        return new ControllerMetrics(meterRegistry);
+    }
+
+    @Bean
+    public PriorityRateLimitingQueue<Request> replicaSetWorkQueue(ControllerProperties controllerProperties, ControllerMetrics controllerMetrics) {
+        // A failing replicaset backs off exponentially on its own, while the token-bucket bounds the
+        // overall requeue rate. The work-queue never hands out a key that is still being processed,
+        // so a replicaset is never reconciled by two workers at the same time. The user-driven changes
+        // wait in a higher lane than the resyncs, see {@link ReplicaSetReconciler#podUpdateLane}.
+        PriorityRateLimitingQueue<Request> workQueue = new InstrumentedWorkQueue<>(
+                new DefaultPriorityRateLimitingQueue<>(Executors.newSingleThreadScheduledExecutor(), replicaSetRateLimiter(controllerProperties)),
+                controllerMetrics);
+        for (PriorityRateLimitingQueue.Lane lane : PriorityRateLimitingQueue.Lane.values()) {
+            Gauge.builder("replicaset.controller.workqueue.depth", workQueue, queue -> queue.length(lane))
+                    .description("replicaset keys waiting in the work-queue")
+                    .tag("lane", lane.name().toLowerCase())
+                    .register(controllerMetrics.getRegistry());
+        }
+        return workQueue;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public HashedWheelScheduler<Request> availabilityRequeueScheduler(EventCoalescer<Request> replicaSetEventCoalescer) {
+        // The ready transition times have a precision of seconds, a tick of 100ms wakes up a replicaset
+        // shortly after its pod becomes available, and 512 slots cover the min-ready-seconds up to ~50s
+        // in one revolution of the wheel. The wake-ups merge with the pod events of the replicaset.
+        return new HashedWheelScheduler<>(
+                Duration.ofMillis(100),
+                512,
+                request -> replicaSetEventCoalescer.add(request, PriorityRateLimitingQueue.Lane.NORMAL));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public EventCoalescer<Request> replicaSetEventCoalescer(
+            PriorityRateLimitingQueue<Request> replicaSetWorkQueue,
+            ControllerProperties controllerProperties) {
+        return new EventCoalescer<>(
+                replicaSetWorkQueue,
+                controllerProperties.getCoalescingWindow(),
+                controllerProperties.getCoalescingMaxDelay());
+    }
+
+    private static RateLimiter<Request> replicaSetRateLimiter(ControllerProperties controllerProperties) {
+        return new MaxOfRateLimiter<>(
+                new ItemExponentialFailureRateLimiter<>(
+                        controllerProperties.getRequeueBaseDelay(),
+                        controllerProperties.getRequeueMaxDelay()),
+                new BucketRateLimiter<>(
+                        controllerProperties.getRequeueBurst(),
+                        controllerProperties.getRequeueQps(),
+                        Duration.ofSeconds(1)));
+    }
+
     @Bean("replicaset-controller")
-    public KubernetesControllerFactory replicaSetController(SharedInformerFactory sharedInformerFactory, ReplicaSetReconciler rs) {
-        return new KubernetesControllerFactory(sharedInformerFactory, rs);
+    public Controller replicaSetController(
+            SharedInformerFactory sharedInformerFactory,
+            ReplicaSetReconciler rs,
+            PriorityRateLimitingQueue<Request> replicaSetWorkQueue,
+            EventCoalescer<Request> replicaSetEventCoalescer,
+            ControllerProperties controllerProperties) {
+        PodWorkQueueKeyFunc podWorkQueueKeyFunc = new PodWorkQueueKeyFunc();
+        return ControllerBuilder.defaultBuilder(sharedInformerFactory)
+                .watch(workQueue -> new PrioritizedControllerWatch<>( // the reconciler needs to subscribe pod events.
+                        V1Pod.class,
+                        replicaSetEventCoalescer,
+                        podWorkQueueKeyFunc::apply, // mapping pod event to reconciler-request
+                        rs::podAddLane,
+                        rs::podUpdateLane,
+                        rs::podDeleteLane,
+                        ReplicaSetReconciler::podFormerOwner,
+                        controllerProperties.getResyncPeriod()))
+                .watch(workQueue -> new PrioritizedControllerWatch<>( // the reconciler needs to subscribe replicaset events.
+                        V1ReplicaSet.class,
+                        replicaSetEventCoalescer,
+                        replicaSet -> new Request(replicaSet.getMetadata().getNamespace(), replicaSet.getMetadata().getName()),
+                        replicaSet -> PriorityRateLimitingQueue.Lane.NORMAL,
+                        ReplicaSetReconciler::replicaSetUpdateLane,
+                        (replicaSet, deletedFinalStateUnknown) -> PriorityRateLimitingQueue.Lane.NORMAL,
+                        controllerProperties.getResyncPeriod()))
+                .withWorkQueue(replicaSetWorkQueue)
+                .withWorkerCount(controllerProperties.getWorkerCount())
+                .withReconciler(rs)
+                .withReadyFunc(rs::informerCacheReady) // the reconciler won't be dealing with reconciler-requests until the ready-func passes.
+                .withName("replicaset-controller")
+                .build();
     }
 
     @Bean
-    public CommandLineRunner starter(SharedInformerFactory sharedInformerFactory, @Qualifier("replicaset-controller") Controller replicasetController) {
+    public CommandLineRunner starter(
+            SharedInformerFactory sharedInformerFactory,
+            @Qualifier("replicaset-controller") Controller replicasetController,
+            ReplicaSetReconciler rs,
+            ControllerMetrics controllerMetrics,
+            ReplicaSetSelectorCache replicaSetSelectorCache,
+            ShardCoordinator shardCoordinator,
+            EventCoalescer<Request> replicaSetEventCoalescer,
+            ApiClient apiClient,
+            ControllerProperties controllerProperties) {
         return args -> {
-            // Optionally wrap the controller-manager with {@link io.kubernetes.client.extended.leaderelection.LeaderElector}
-            // so that the controller works in HA setup.
-            // https://github.com/kubernetes-client/java/blob/master/examples/src/main/java/io/kubernetes/client/examples/LeaderElectionExample.java
-            ControllerManager controllerManager = new ControllerManager(
-                    sharedInformerFactory,
-                    replicasetController
-            );
-            // Starts the controller-manager in background.
-            Executors.newSingleThreadExecutor().submit(controllerManager);
-        };
-    }
+            // Indexers must be registered before the informers are started by the controller-manager.
+            SharedIndexInformer<V1Pod> podInformer = sharedInformerFactory.getExistingSharedIndexInformer(V1Pod.class);
+            Map<String, Function<V1Pod, List<String>>> podIndexers = new HashMap<>();
+            podIndexers.put(PodIndexers.CONTROLLER_UID_INDEX, PodIndexers.controllerUidIndexFunc);
+            podIndexers.put(PodIndexers.ORPHAN_LABEL_INDEX, PodIndexers.orphanLabelIndexFunc);
+            podInformer.addIndexers(podIndexers);
+
+            SharedIndexInformer<V1ReplicaSet> rsInformer = sharedInformerFactory.getExistingSharedIndexInformer(V1ReplicaSet.class);
+            rsInformer.addEventHandler(replicaSetSelectorCache.evictionHandler());
+
+            podInformer.addEventHandler(controllerMetrics.informerEventCounter("pods"));
+            rsInformer.addEventHandler(controllerMetrics.informerEventCounter("replicasets"));
+            FunctionCounter.builder("replicaset.controller.status.updates.skipped", rs, ReplicaSetReconciler::getSkippedStatusUpdates)
+                    .description("status updates skipped because the calculated status didn't change")
+                    .register(controllerMetrics.getRegistry());
+            FunctionCounter.builder("replicaset.controller.events.coalesced", replicaSetEventCoalescer, EventCoalescer::getCoalescedEvents)
+                    .description("informer events merged into an already pending key")
+                    .register(controllerMetrics.getRegistry());
+            Gauge.builder("replicaset.controller.shard.members", shardCoordinator, ShardCoordinator::getMemberCount)
+                    .description("live members of the shard group")
+                    .register(controllerMetrics.getRegistry());
 
-    @KubernetesInformers({
-            @KubernetesInformer( // Adding a pod-informer to the factory for list-watching pod resources
-                    apiTypeClass = V1Pod.class,
-                    apiListTypeClass = V1PodList.class,
-                    groupVersionResource =
-                    @GroupVersionResource(
-                            apiGroup = "",
-                            apiVersion = "v1",
-                            resourcePlural = "pods")),
-            @KubernetesInformer( // Adding a replicaset-informer to the factory for list-watching replicaset resources
-                    apiTypeClass = V1ReplicaSet.class,
-                    apiListTypeClass = V1ReplicaSetList.class,
-                    groupVersionResource =
-                    @GroupVersionResource(
-                            apiGroup = "apps",
-                            apiVersion = "v1",
-                            resourcePlural = "replicasets")),
-    })
-    class ControllerSharedInformerFactory extends SharedInformerFactory {
+            // Joining the shard group, the replicasets moved to this replica are enqueued upon rebalancing.
+            shardCoordinator.start(rs::enqueueOwnedReplicaSets);
+
+            AtomicInteger leader = new AtomicInteger();
+            // Micrometer only keeps a weak reference to the gauge target by default.
+            Gauge.builder("replicaset.controller.leader", leader, AtomicInteger::get)
+                    .description("1 on the replica running the reconcile workers")
+                    .strongReference(true)
+                    .register(controllerMetrics.getRegistry());
+            Counter leaderTransitions = Counter.builder("replicaset.controller.leader.transitions")
+                    .description("times this replica became the leader")
+                    .register(controllerMetrics.getRegistry());
+            if (!controllerProperties.isLeaderElectionEnabled()) {
+                leader.set(1);
+                ControllerManager controllerManager = new ControllerManager(
+                        sharedInformerFactory,
+                        replicasetController
+                );
+                // Starts the controller-manager in background.
+                Executors.newSingleThreadExecutor().submit(controllerManager);
+                return;
+            }
+
+            // Unlike wrapping the whole controller-manager with the leader-elector, the informers are started
+            // right away so that a standby replica takes over with synced caches. The informer events keep
+            // the keys in the work-queue meanwhile, so that the new leader starts from a full sweep.
+            sharedInformerFactory.startAllRegisteredInformers();
+            String identity = replicaIdentity(controllerProperties.getLeaderElectionIdentity());
+            LeaderElector leaderElector = new LeaderElector(new LeaderElectionConfig(
+                    new LeaseLock(
+                            controllerProperties.getLeaderElectionLeaseNamespace(),
+                            controllerProperties.getLeaderElectionLeaseName(),
+                            identity,
+                            apiClient),
+                    controllerProperties.getLeaderElectionLeaseDuration(),
+                    controllerProperties.getLeaderElectionRenewDeadline(),
+                    controllerProperties.getLeaderElectionRetryPeriod()));
+            Executors.newSingleThreadExecutor().submit(() -> leaderElector.run(
+                    () -> {
+                        logger.info("{} became the leader, starting the reconcile workers", identity);
+                        leader.set(1);
+                        leaderTransitions.increment();
+                        replicasetController.run();
+                    },
+                    () -> {
+                        // The controller can't be restarted as its work-queue is shut down, exiting so that
+                        // this replica is restarted as a standby rather than reconciling without the lease.
+                        logger.error("{} lost the leadership, exiting", identity);
+                        leader.set(0);
+                        replicasetController.shutdown();
+                        System.exit(1);
+                    }));
+        };
     }
 }
@@ -0,0 +1,353 @@
+package com.github.yue9944882.kubernetes.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// Tunables of the replicaset controller, bound from the "replicaset-controller.*" spring properties.
+@ConfigurationProperties(prefix = "replicaset-controller")
+public class ControllerProperties {
+
+    // looks up the pods of a replicaset from the owner-uid/orphan-label indexes on the pod informer.
+    // setting it to false falls back to scanning every pod in the namespace upon each reconcile.
+    private boolean indexedPodLookup = true;
+
+    // caches slim projections of the pods in the pod informer, only keeping the fields read by the controller.
+    private boolean slimPodCache = false;
+
+    // the number of objects listed per page by the informers upon the initial list and the re-lists,
+    // 0 lists every object in one response.
+    private int listPageSize = 500;
+
+    // lists the pods in the protobuf encoding, only taking effect with the slim pod cache.
+    private boolean protobufPodList = false;
+
+    // the maximum number of pods created/deleted for a replicaset in one reconcile.
+    private int burstReplicas = 500;
+
+    // the maximum number of api calls in flight across all the replicasets in the blocking mode.
+    private int podControlParallelism = 16;
+
+    // BLOCKING: an api call occupies a thread of the pod-control executor for its whole round-trip, and a worker
+    // waits for the calls of its replicaset. ASYNC: the calls complete on the callbacks of the async client, so
+    // that the workers move on while the calls of many replicasets are in flight.
+    private ApiMode apiMode = ApiMode.BLOCKING;
+
+    // the maximum number of api calls in flight to the api-server in the async mode.
+    private int maxRequestsInFlight = 64;
+
+    // the timeout of an api call issued by the reconciler.
+    private Duration apiRequestTimeout = Duration.ofSeconds(30);
+
+    // how long a replicaset waits for the informer to observe its creations/deletions before syncing again anyway.
+    private Duration expectationsTimeout = Duration.ofMinutes(5);
+
+    // the number of reconciler workers, a replicaset is never reconciled by two workers at the same time.
+    private int workerCount = 4;
+
+    // the resync period of the pod and replicaset informer event-handlers.
+    private Duration resyncPeriod = Duration.ofSeconds(60);
+
+    // the per-replicaset exponential backoff of failed reconciles, starting at requeueBaseDelay and capped at requeueMaxDelay.
+    private Duration requeueBaseDelay = Duration.ofMillis(5);
+
+    private Duration requeueMaxDelay = Duration.ofSeconds(1000);
+
+    // the overall token-bucket limiting the requeues of failed reconciles across all the replicasets.
+    private long requeueQps = 10;
+
+    private long requeueBurst = 100;
+
+    // merges the informer events of a replicaset into one reconcile once no event arrived for the window,
+    // or at the latest after the max-delay since the first event. a zero window enqueues every event.
+    private Duration coalescingWindow = Duration.ofMillis(100);
+
+    private Duration coalescingMaxDelay = Duration.ofSeconds(1);
+
+    // spreads the replicasets over the controller replicas of the shard group, see {@link com.github.yue9944882.kubernetes.ShardCoordinator}.
+    private boolean shardingEnabled = false;
+
+    private String shardGroup = "replicaset-controller";
+
+    // the namespace of the shard leases.
+    private String shardLeaseNamespace = "default";
+
+    // the identity of this replica in the shard group, defaults to the hostname.
+    private String shardIdentity;
+
+    private Duration shardLeaseDuration = Duration.ofSeconds(15);
+
+    private Duration shardRenewPeriod = Duration.ofSeconds(5);
+
+    // runs the reconcile workers only on the replica holding the leader-election lease. the standby
+    // replicas keep their informers synced so that they take over without re-listing.
+    private boolean leaderElectionEnabled = false;
+
+    private String leaderElectionLeaseName = "replicaset-controller";
+
+    private String leaderElectionLeaseNamespace = "default";
+
+    // the identity of this replica in the leader election, defaults to the hostname.
+    private String leaderElectionIdentity;
+
+    // how long the standby replicas wait before taking over an un-renewed lease.
+    private Duration leaderElectionLeaseDuration = Duration.ofSeconds(15);
+
+    // how long the leader keeps retrying to renew the lease before giving up the leadership.
+    private Duration leaderElectionRenewDeadline = Duration.ofSeconds(10);
+
+    private Duration leaderElectionRetryPeriod = Duration.ofSeconds(2);
+
+    public boolean isIndexedPodLookup() {
+        return indexedPodLookup;
+    }
+
+    public void setIndexedPodLookup(boolean indexedPodLookup) {
+        this.indexedPodLookup = indexedPodLookup;
+    }
+
+    public boolean isSlimPodCache() {
+        return slimPodCache;
+    }
+
+    public void setSlimPodCache(boolean slimPodCache) {
+        this.slimPodCache = slimPodCache;
+    }
+
+    public int getListPageSize() {
+        return listPageSize;
+    }
+
+    public void setListPageSize(int listPageSize) {
+        this.listPageSize = listPageSize;
+    }
+
+    public boolean isProtobufPodList() {
+        return protobufPodList;
+    }
+
+    public void setProtobufPodList(boolean protobufPodList) {
+        this.protobufPodList = protobufPodList;
+    }
+
+    public int getBurstReplicas() {
+        return burstReplicas;
+    }
+
+    public void setBurstReplicas(int burstReplicas) {
+        this.burstReplicas = burstReplicas;
+    }
+
+    public int getPodControlParallelism() {
+        return podControlParallelism;
+    }
+
+    public void setPodControlParallelism(int podControlParallelism) {
+        this.podControlParallelism = podControlParallelism;
+    }
+
+    public Duration getExpectationsTimeout() {
+        return expectationsTimeout;
+    }
+
+    public void setExpectationsTimeout(Duration expectationsTimeout) {
+        this.expectationsTimeout = expectationsTimeout;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    public Duration getResyncPeriod() {
+        return resyncPeriod;
+    }
+
+    public void setResyncPeriod(Duration resyncPeriod) {
+        this.resyncPeriod = resyncPeriod;
+    }
+
+    public Duration getRequeueBaseDelay() {
+        return requeueBaseDelay;
+    }
+
+    public void setRequeueBaseDelay(Duration requeueBaseDelay) {
+        this.requeueBaseDelay = requeueBaseDelay;
+    }
+
+    public Duration getRequeueMaxDelay() {
+        return requeueMaxDelay;
+    }
+
+    public void setRequeueMaxDelay(Duration requeueMaxDelay) {
+        this.requeueMaxDelay = requeueMaxDelay;
+    }
+
+    public long getRequeueQps() {
+        return requeueQps;
+    }
+
+    public void setRequeueQps(long requeueQps) {
+        this.requeueQps = requeueQps;
+    }
+
+    public long getRequeueBurst() {
+        return requeueBurst;
+    }
+
+    public void setRequeueBurst(long requeueBurst) {
+        this.requeueBurst = requeueBurst;
+    }
+
+    public boolean isShardingEnabled() {
+        return shardingEnabled;
+    }
+
+    public void setShardingEnabled(boolean shardingEnabled) {
+        this.shardingEnabled = shardingEnabled;
+    }
+
+    public String getShardGroup() {
+        return shardGroup;
+    }
+
+    public void setShardGroup(String shardGroup) {
+        this.shardGroup = shardGroup;
+    }
+
+    public String getShardLeaseNamespace() {
+        return shardLeaseNamespace;
+    }
+
+    public void setShardLeaseNamespace(String shardLeaseNamespace) {
+        this.shardLeaseNamespace = shardLeaseNamespace;
+    }
+
+    public String getShardIdentity() {
+        return shardIdentity;
+    }
+
+    public void setShardIdentity(String shardIdentity) {
+        this.shardIdentity = shardIdentity;
+    }
+
+    public Duration getShardLeaseDuration() {
+        return shardLeaseDuration;
+    }
+
+    public void setShardLeaseDuration(Duration shardLeaseDuration) {
+        this.shardLeaseDuration = shardLeaseDuration;
+    }
+
+    public Duration getShardRenewPeriod() {
+        return shardRenewPeriod;
+    }
+
+    public void setShardRenewPeriod(Duration shardRenewPeriod) {
+        this.shardRenewPeriod = shardRenewPeriod;
+    }
+
+    public ApiMode getApiMode() {
+        return apiMode;
+    }
+
+    public void setApiMode(ApiMode apiMode) {
+        this.apiMode = apiMode;
+    }
+
+    public int getMaxRequestsInFlight() {
+        return maxRequestsInFlight;
+    }
+
+    public void setMaxRequestsInFlight(int maxRequestsInFlight) {
+        this.maxRequestsInFlight = maxRequestsInFlight;
+    }
+
+    public Duration getApiRequestTimeout() {
+        return apiRequestTimeout;
+    }
+
+    public void setApiRequestTimeout(Duration apiRequestTimeout) {
+        this.apiRequestTimeout = apiRequestTimeout;
+    }
+
+    public boolean isLeaderElectionEnabled() {
+        return leaderElectionEnabled;
+    }
+
+    public void setLeaderElectionEnabled(boolean leaderElectionEnabled) {
+        this.leaderElectionEnabled = leaderElectionEnabled;
+    }
+
+    public String getLeaderElectionLeaseName() {
+        return leaderElectionLeaseName;
+    }
+
+    public void setLeaderElectionLeaseName(String leaderElectionLeaseName) {
+        this.leaderElectionLeaseName = leaderElectionLeaseName;
+    }
+
+    public String getLeaderElectionLeaseNamespace() {
+        return leaderElectionLeaseNamespace;
+    }
+
+    public void setLeaderElectionLeaseNamespace(String leaderElectionLeaseNamespace) {
+        this.leaderElectionLeaseNamespace = leaderElectionLeaseNamespace;
+    }
+
+    public String getLeaderElectionIdentity() {
+        return leaderElectionIdentity;
+    }
+
+    public void setLeaderElectionIdentity(String leaderElectionIdentity) {
+        this.leaderElectionIdentity = leaderElectionIdentity;
+    }
+
+    public Duration getLeaderElectionLeaseDuration() {
+        return leaderElectionLeaseDuration;
+    }
+
+    public void setLeaderElectionLeaseDuration(Duration leaderElectionLeaseDuration) {
+        this.leaderElectionLeaseDuration = leaderElectionLeaseDuration;
+    }
+
+    public Duration getLeaderElectionRenewDeadline() {
+        return leaderElectionRenewDeadline;
+    }
+
+    public void setLeaderElectionRenewDeadline(Duration leaderElectionRenewDeadline) {
+        this.leaderElectionRenewDeadline = leaderElectionRenewDeadline;
+    }
+
+    public Duration getLeaderElectionRetryPeriod() {
+        return leaderElectionRetryPeriod;
+    }
+
+    public void setLeaderElectionRetryPeriod(Duration leaderElectionRetryPeriod) {
+        this.leaderElectionRetryPeriod = leaderElectionRetryPeriod;
+    }
+
+    public Duration getCoalescingWindow() {
+        return coalescingWindow;
+    }
+
+    public void setCoalescingWindow(Duration coalescingWindow) {
+        this.coalescingWindow = coalescingWindow;
+    }
+
+    public Duration getCoalescingMaxDelay() {
+        return coalescingMaxDelay;
+    }
+
+    public void setCoalescingMaxDelay(Duration coalescingMaxDelay) {
+        this.coalescingMaxDelay = coalescingMaxDelay;
+    }
+
+    public enum ApiMode {
+        BLOCKING,
+        ASYNC
+    }
+}
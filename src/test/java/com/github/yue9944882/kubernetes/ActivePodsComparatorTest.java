@@ -0,0 +1,86 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.openapi.models.V1ContainerStatus;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodCondition;
+import io.kubernetes.client.openapi.models.V1PodSpec;
+import io.kubernetes.client.openapi.models.V1PodStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ActivePodsComparatorTest {
+
+    private static final OffsetDateTime NOW = OffsetDateTime.parse("2020-10-01T00:00:00Z");
+
+    // the pods from the cheapest to delete.
+    private static final List<V1Pod> ORDERED = Arrays.asList(
+            pod("unscheduled", null, "Pending", false, 0, NOW),
+            pod("pending", "node-1", "Pending", false, 0, NOW),
+            pod("unknown", "node-1", "Unknown", false, 0, NOW),
+            pod("not-ready", "node-1", "Running", false, 0, NOW),
+            pod("ready-restarted", "node-1", "Running", true, 5, NOW.minusHours(1)),
+            pod("ready-no-timestamp", "node-1", "Running", true, 0, null),
+            pod("ready-newer", "node-1", "Running", true, 0, NOW),
+            pod("ready-older", "node-1", "Running", true, 0, NOW.minusHours(1)));
+
+    @Test
+    public void testDeletionOrder() {
+        Random random = new Random(0);
+        for (int i = 0; i < 20; i++) {
+            List<V1Pod> pods = new ArrayList<>(ORDERED);
+            Collections.shuffle(pods, random);
+            pods.sort(ActivePodsComparator.INSTANCE);
+            assertEquals(names(ORDERED), names(pods));
+        }
+    }
+
+    @Test
+    public void testEachRuleDecides() {
+        for (int i = 0; i < ORDERED.size(); i++) {
+            assertEquals(0, ActivePodsComparator.INSTANCE.compare(ORDERED.get(i), ORDERED.get(i)));
+            for (int j = i + 1; j < ORDERED.size(); j++) {
+                String pair = ORDERED.get(i).getMetadata().getName() + " vs " + ORDERED.get(j).getMetadata().getName();
+                assertTrue(ActivePodsComparator.INSTANCE.compare(ORDERED.get(i), ORDERED.get(j)) < 0, pair);
+                assertTrue(ActivePodsComparator.INSTANCE.compare(ORDERED.get(j), ORDERED.get(i)) > 0, pair);
+            }
+        }
+    }
+
+    // the earlier rules win over the later ones.
+    @Test
+    public void testRulePrecedence() {
+        // an unscheduled ready pod still goes before a scheduled pending one.
+        assertTrue(ActivePodsComparator.INSTANCE.compare(
+                pod("a", null, "Running", true, 0, NOW.minusHours(1)),
+                pod("b", "node-1", "Pending", false, 9, NOW)) < 0);
+        // a ready pod with restarts still goes after any not-ready pod.
+        assertTrue(ActivePodsComparator.INSTANCE.compare(
+                pod("a", "node-1", "Running", false, 0, NOW.minusHours(1)),
+                pod("b", "node-1", "Running", true, 9, NOW)) < 0);
+    }
+
+    private static List<String> names(List<V1Pod> pods) {
+        return pods.stream().map(pod -> pod.getMetadata().getName()).collect(Collectors.toList());
+    }
+
+    private static V1Pod pod(String name, String nodeName, String phase, boolean ready, int restarts, OffsetDateTime created) {
+        return new V1Pod()
+                .metadata(new V1ObjectMeta().name(name).creationTimestamp(created))
+                .spec(new V1PodSpec().nodeName(nodeName))
+                .status(new V1PodStatus()
+                        .phase(phase)
+                        .addConditionsItem(new V1PodCondition().type("Ready").status(ready ? "True" : "False"))
+                        .addContainerStatusesItem(new V1ContainerStatus().name("app").restartCount(restarts)));
+    }
+}
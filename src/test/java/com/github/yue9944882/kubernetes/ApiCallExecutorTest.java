@@ -0,0 +1,107 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.openapi.ApiClient;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ApiCallExecutorTest {
+
+    private static final int MAX_REQUESTS_IN_FLIGHT = 4;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxObservedInFlight = new AtomicInteger();
+
+    private ExecutorService blockingExecutor;
+
+    private ApiClient apiClient;
+
+    @BeforeEach
+    public void setUp() {
+        blockingExecutor = Executors.newSingleThreadExecutor();
+        apiClient = new ApiClient();
+        apiClient.setBasePath("http://fake-apiserver.invalid");
+        apiClient.setHttpClient(apiClient.getHttpClient().newBuilder()
+                .addInterceptor(chain -> {
+                    int current = inFlight.incrementAndGet();
+                    maxObservedInFlight.accumulateAndGet(current, Math::max);
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .body(ResponseBody.create(MediaType.parse("application/json"), "{}"))
+                            .build();
+                })
+                .build());
+        // as tight as the dispatcher may get, every dispatcher slot may be held by a callback.
+        apiClient.getHttpClient().dispatcher().setMaxRequestsPerHost(MAX_REQUESTS_IN_FLIGHT);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        blockingExecutor.shutdown();
+    }
+
+    // the later batches are sent from the callbacks of the earlier ones, more calls than the in-flight
+    // bound must neither deadlock nor exceed the bound.
+    @Test
+    public void testChainedBatchesBeyondMaxRequestsInFlight() throws Exception {
+        ApiCallExecutor executor = new ApiCallExecutor(apiClient, true, blockingExecutor, MAX_REQUESTS_IN_FLIGHT, Duration.ofSeconds(10));
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Integer>> replicaSets = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            replicaSets.add(ReplicaSetReconciler.slowStartBatch(100, 1, () -> executor.<Void>execute(
+                    () -> apiClient.getHttpClient().newCall(new Request.Builder()
+                            .url("http://fake-apiserver.invalid/api/v1/pods")
+                            .build()),
+                    null), errors));
+        }
+        for (CompletableFuture<Integer> replicaSet : replicaSets) {
+            assertEquals(100, (int) replicaSet.get(30, TimeUnit.SECONDS));
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+        assertTrue(maxObservedInFlight.get() <= MAX_REQUESTS_IN_FLIGHT, "observed " + maxObservedInFlight.get() + " calls in flight");
+    }
+
+    @Test
+    public void testAwaitCapacityReturnsOnceParkedCallsDrain() throws Exception {
+        ApiCallExecutor executor = new ApiCallExecutor(apiClient, true, blockingExecutor, MAX_REQUESTS_IN_FLIGHT, Duration.ofSeconds(10));
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < 4 * MAX_REQUESTS_IN_FLIGHT; i++) {
+            calls.add(executor.execute(
+                    () -> apiClient.getHttpClient().newCall(new Request.Builder()
+                            .url("http://fake-apiserver.invalid/api/v1/pods")
+                            .build()),
+                    null));
+        }
+        executor.awaitCapacity();
+        CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+    }
+}
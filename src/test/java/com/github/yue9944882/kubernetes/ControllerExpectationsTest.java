@@ -0,0 +1,63 @@
+package com.github.yue9944882.kubernetes;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ControllerExpectationsTest {
+
+    private final ControllerExpectations expectations = new ControllerExpectations(Duration.ofMinutes(5));
+
+    @Test
+    public void testSatisfiedWithoutExpectations() {
+        assertTrue(expectations.satisfiedExpectations("default/rs"));
+    }
+
+    @Test
+    public void testCreationsObserved() {
+        expectations.expectCreations("default/rs", 2);
+        assertFalse(expectations.satisfiedExpectations("default/rs"));
+        expectations.creationObserved("default/rs");
+        assertFalse(expectations.satisfiedExpectations("default/rs"));
+        expectations.creationObserved("default/rs");
+        assertTrue(expectations.satisfiedExpectations("default/rs"));
+        // the creations of other replicasets don't count.
+        expectations.expectCreations("default/rs", 1);
+        expectations.creationObserved("default/other");
+        assertFalse(expectations.satisfiedExpectations("default/rs"));
+    }
+
+    // the graceful-deletion update and the final delete event of a pod are observed once.
+    @Test
+    public void testDeletionsObservedOncePerPod() {
+        expectations.expectDeletions("default/rs", Arrays.asList("default/pod-1", "default/pod-2"));
+        expectations.deletionObserved("default/rs", "default/pod-1");
+        expectations.deletionObserved("default/rs", "default/pod-1");
+        assertFalse(expectations.satisfiedExpectations("default/rs"));
+        // pods that weren't being deleted don't count.
+        expectations.deletionObserved("default/rs", "default/pod-3");
+        assertFalse(expectations.satisfiedExpectations("default/rs"));
+        expectations.deletionObserved("default/rs", "default/pod-2");
+        assertTrue(expectations.satisfiedExpectations("default/rs"));
+    }
+
+    @Test
+    public void testExpectationsExpire() throws InterruptedException {
+        ControllerExpectations expiring = new ControllerExpectations(Duration.ofMillis(10));
+        expiring.expectCreations("default/rs", 1);
+        assertFalse(expiring.satisfiedExpectations("default/rs"));
+        Thread.sleep(50);
+        assertTrue(expiring.satisfiedExpectations("default/rs"));
+    }
+
+    @Test
+    public void testDeleteExpectations() {
+        expectations.expectCreations("default/rs", 3);
+        expectations.deleteExpectations("default/rs");
+        assertTrue(expectations.satisfiedExpectations("default/rs"));
+    }
+}
@@ -0,0 +1,235 @@
+package com.github.yue9944882.kubernetes;
+
+import com.github.yue9944882.kubernetes.PriorityRateLimitingQueue.Lane;
+import io.kubernetes.client.extended.workqueue.ratelimiter.ItemExponentialFailureRateLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DefaultPriorityRateLimitingQueueTest {
+
+    private ManualDelayer delayer;
+
+    private DefaultPriorityRateLimitingQueue<String> queue;
+
+    @BeforeEach
+    public void setUp() {
+        delayer = new ManualDelayer();
+        queue = new DefaultPriorityRateLimitingQueue<>(
+                delayer,
+                new ItemExponentialFailureRateLimiter<>(Duration.ofMillis(1), Duration.ofSeconds(1)));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        queue.shutDown();
+    }
+
+    @Test
+    public void testPromotionWhileQueued() throws InterruptedException {
+        queue.add("a", Lane.LOW);
+        queue.add("a", Lane.HIGH);
+        assertEquals(0, queue.length(Lane.LOW));
+        assertEquals(1, queue.length(Lane.HIGH));
+        // never demoted.
+        queue.add("a", Lane.LOW);
+        assertEquals(0, queue.length(Lane.LOW));
+        assertEquals(1, queue.length(Lane.HIGH));
+        assertEquals("a", queue.get());
+        assertEquals(0, queue.length());
+    }
+
+    @Test
+    public void testPromotionWhileProcessing() throws InterruptedException {
+        queue.add("a", Lane.LOW);
+        assertEquals("a", queue.get());
+        // neither handed out nor queued while being processed.
+        queue.add("a", Lane.LOW);
+        queue.add("a", Lane.HIGH);
+        assertEquals(0, queue.length());
+        queue.done("a");
+        assertEquals(1, queue.length(Lane.HIGH));
+        assertEquals(0, queue.length(Lane.LOW));
+        assertEquals("a", queue.get());
+        queue.done("a");
+        assertEquals(0, queue.length());
+    }
+
+    @Test
+    public void testDoneWithoutReAddDoesNotRequeue() throws InterruptedException {
+        queue.add("a", Lane.NORMAL);
+        assertEquals("a", queue.get());
+        queue.done("a");
+        assertEquals(0, queue.length());
+    }
+
+    @Test
+    public void testWeightedRoundRobin() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            queue.add("high-" + i, Lane.HIGH);
+            queue.add("normal-" + i, Lane.NORMAL);
+            queue.add("low-" + i, Lane.LOW);
+        }
+        // the low lane is served once per round of 8 high and 3 normal keys, however busy the higher lanes are.
+        List<String> expected = new ArrayList<>();
+        for (int round = 0; round < 2; round++) {
+            for (Lane lane : Lane.values()) {
+                for (int i = 0; i < lane.getWeight(); i++) {
+                    expected.add(lane.name().toLowerCase() + "-" + (round * lane.getWeight() + i));
+                }
+            }
+        }
+        List<String> served = new ArrayList<>();
+        for (int i = 0; i < expected.size(); i++) {
+            String item = queue.get();
+            served.add(item);
+            queue.done(item);
+        }
+        assertEquals(expected, served);
+    }
+
+    @Test
+    public void testWeightedRoundRobinOnceHigherLanesRunDry() throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            queue.add("high-" + i, Lane.HIGH);
+        }
+        queue.add("normal-0", Lane.NORMAL);
+        for (int i = 0; i < 3; i++) {
+            queue.add("low-" + i, Lane.LOW);
+        }
+        // a lane running dry hands its turn to the lower ones instead of holding back the round.
+        assertEquals(Arrays.asList(
+                "high-0", "high-1", "high-2", "high-3", "high-4", "high-5", "high-6", "high-7", "normal-0", "low-0",
+                "high-8", "high-9", "low-1", "low-2"), drain());
+    }
+
+    @Test
+    public void testFifoWithinLane() throws InterruptedException {
+        queue.add("a", Lane.NORMAL);
+        queue.add("b", Lane.NORMAL);
+        queue.add("c", Lane.NORMAL);
+        assertEquals("a", queue.get());
+        assertEquals("b", queue.get());
+        assertEquals("c", queue.get());
+    }
+
+    @Test
+    public void testEmptyLaneDoesNotHoldBackOthers() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            queue.add("low-" + i, Lane.LOW);
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals("low-" + i, queue.get());
+        }
+    }
+
+    @Test
+    public void testAddRateLimitedGoesToNormalLane() throws InterruptedException {
+        queue.addRateLimited("a");
+        assertEquals(1, queue.numRequeues("a"));
+        assertEquals(Collections.singletonList(Duration.ofMillis(1)), delayer.delays());
+        assertEquals(0, queue.length());
+        delayer.runScheduled();
+        assertEquals(1, queue.length(Lane.NORMAL));
+        assertEquals(0, queue.length(Lane.HIGH));
+        assertEquals(0, queue.length(Lane.LOW));
+        // the requeue promotes like any other add.
+        queue.add("a", Lane.HIGH);
+        assertEquals(1, queue.length(Lane.HIGH));
+        assertEquals(0, queue.length(Lane.NORMAL));
+    }
+
+    @Test
+    public void testForgetResetsBackoffWithoutDequeueing() throws InterruptedException {
+        queue.addRateLimited("a");
+        queue.addRateLimited("a");
+        assertEquals(2, queue.numRequeues("a"));
+        assertEquals(Arrays.asList(Duration.ofMillis(1), Duration.ofMillis(2)), delayer.delays());
+        delayer.runScheduled();
+        assertEquals(1, queue.length(Lane.NORMAL));
+        queue.forget("a");
+        assertEquals(0, queue.numRequeues("a"));
+        assertEquals(1, queue.length(Lane.NORMAL));
+    }
+
+    @Test
+    public void testAddRateLimitedWhileProcessingRequeuesOnDone() throws InterruptedException {
+        queue.add("a", Lane.HIGH);
+        assertEquals("a", queue.get());
+        queue.addRateLimited("a");
+        delayer.runScheduled();
+        assertEquals(0, queue.length());
+        queue.done("a");
+        assertEquals(1, queue.length(Lane.NORMAL));
+    }
+
+    @Test
+    public void testGetReturnsNullOnceShutDown() throws InterruptedException {
+        queue.shutDown();
+        queue.add("a", Lane.HIGH);
+        assertTrue(queue.isShuttingDown());
+        assertNull(queue.get());
+    }
+
+    @Test
+    public void testAddAfterWithoutDelayAddsRightAway() {
+        queue.addAfter("a", Duration.ZERO);
+        assertEquals(1, queue.length(Lane.NORMAL));
+        assertTrue(delayer.delays().isEmpty());
+    }
+
+    private List<String> drain() throws InterruptedException {
+        List<String> served = new ArrayList<>();
+        while (queue.length() > 0) {
+            String item = queue.get();
+            served.add(item);
+            queue.done(item);
+        }
+        return served;
+    }
+
+    // keeps the delayed adds until the test runs them, rather than waiting for their delays.
+    private static class ManualDelayer extends ScheduledThreadPoolExecutor {
+
+        private final List<Duration> delays = new ArrayList<>();
+
+        private final List<Runnable> scheduled = new ArrayList<>();
+
+        private ManualDelayer() {
+            super(1);
+        }
+
+        @Override
+        public synchronized ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            delays.add(Duration.ofNanos(unit.toNanos(delay)));
+            scheduled.add(command);
+            return null;
+        }
+
+        private synchronized List<Duration> delays() {
+            return new ArrayList<>(delays);
+        }
+
+        private void runScheduled() {
+            List<Runnable> commands;
+            synchronized (this) {
+                commands = new ArrayList<>(scheduled);
+                scheduled.clear();
+            }
+            commands.forEach(Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.yue9944882.kubernetes;
+
+import com.github.yue9944882.kubernetes.PriorityRateLimitingQueue.Lane;
+import io.kubernetes.client.extended.workqueue.ratelimiter.ItemExponentialFailureRateLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// advances the timer wheel of the coalescer by hand upon a manual clock, in its ticks of 10ms.
+public class EventCoalescerTest {
+
+    private final DefaultPriorityRateLimitingQueue<String> queue = new DefaultPriorityRateLimitingQueue<>(
+            Executors.newSingleThreadScheduledExecutor(),
+            new ItemExponentialFailureRateLimiter<>(Duration.ofMillis(1), Duration.ofSeconds(1)));
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    private final long startNanos = clock.get();
+
+    private EventCoalescer<String> coalescer;
+
+    @AfterEach
+    public void tearDown() {
+        coalescer.shutdown();
+        queue.shutDown();
+    }
+
+    private EventCoalescer<String> newCoalescer(Duration window, Duration maxDelay) {
+        return new EventCoalescer<>(queue, window, maxDelay, clock::get, null);
+    }
+
+    @Test
+    public void testBurstIsAddedOnceToHighestLane() {
+        coalescer = newCoalescer(Duration.ofMillis(50), Duration.ofSeconds(1));
+        coalescer.add("a", Lane.LOW);
+        for (int i = 0; i < 9; i++) {
+            coalescer.add("a", Lane.NORMAL);
+        }
+        coalescer.add("a", Lane.LOW);
+        // waiting for the window, rounded up to the next tick.
+        ticksUntil(50);
+        assertEquals(0, queue.length());
+        ticksUntil(60);
+        assertEquals(1, queue.length());
+        assertEquals(1, queue.length(Lane.NORMAL));
+        assertEquals(10, coalescer.getCoalescedEvents());
+        ticksUntil(1000);
+        assertEquals(1, queue.length());
+    }
+
+    @Test
+    public void testEventWithinWindowExtendsIt() {
+        coalescer = newCoalescer(Duration.ofMillis(50), Duration.ofSeconds(1));
+        coalescer.add("a", Lane.NORMAL);
+        ticksUntil(40);
+        coalescer.add("a", Lane.NORMAL);
+        // the window of the last event ends at 90ms, the wheel checked at 60ms and reschedules it.
+        ticksUntil(90);
+        assertEquals(0, queue.length());
+        ticksUntil(100);
+        assertEquals(1, queue.length(Lane.NORMAL));
+    }
+
+    @Test
+    public void testKeysAreCoalescedSeparately() {
+        coalescer = newCoalescer(Duration.ofMillis(50), Duration.ofSeconds(1));
+        coalescer.add("a", Lane.NORMAL);
+        coalescer.add("b", Lane.LOW);
+        coalescer.add("a", Lane.NORMAL);
+        ticksUntil(60);
+        assertEquals(1, queue.length(Lane.NORMAL));
+        assertEquals(1, queue.length(Lane.LOW));
+        assertEquals(1, coalescer.getCoalescedEvents());
+    }
+
+    @Test
+    public void testMaxDelayCapsSteadyStream() {
+        coalescer = newCoalescer(Duration.ofMillis(50), Duration.ofMillis(200));
+        long addedMillis = -1;
+        // an event every tick for a second never lets the window elapse.
+        while (elapsedMillis() < 1000) {
+            coalescer.add("a", Lane.NORMAL);
+            ticksUntil(elapsedMillis() + 10);
+            if (addedMillis < 0 && queue.length() > 0) {
+                addedMillis = elapsedMillis();
+            }
+        }
+        // the first tick after the max-delay.
+        assertEquals(210, addedMillis);
+        assertEquals(1, queue.length());
+    }
+
+    @Test
+    public void testHighLaneIsAddedRightAway() {
+        coalescer = newCoalescer(Duration.ofMillis(50), Duration.ofSeconds(1));
+        coalescer.add("a", Lane.NORMAL);
+        coalescer.add("a", Lane.HIGH);
+        assertEquals(1, queue.length(Lane.HIGH));
+        // the pending burst was taken over, it isn't added again once the window elapses.
+        assertEquals(1, coalescer.getCoalescedEvents());
+        ticksUntil(1000);
+        assertEquals(1, queue.length());
+        assertEquals(1, queue.length(Lane.HIGH));
+    }
+
+    @Test
+    public void testZeroWindowAddsRightAway() {
+        coalescer = newCoalescer(Duration.ZERO, Duration.ZERO);
+        coalescer.add("a", Lane.LOW);
+        coalescer.add("b", Lane.NORMAL);
+        assertEquals(1, queue.length(Lane.LOW));
+        assertEquals(1, queue.length(Lane.NORMAL));
+        assertEquals(0, coalescer.getCoalescedEvents());
+    }
+
+    // advances the wheel upon every tick, like its ticker.
+    private void ticksUntil(long millis) {
+        while (elapsedMillis() < millis) {
+            clock.set(startNanos + TimeUnit.MILLISECONDS.toNanos((elapsedMillis() / 10 + 1) * 10));
+            coalescer.advance();
+        }
+    }
+
+    private long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(clock.get() - startNanos);
+    }
+}
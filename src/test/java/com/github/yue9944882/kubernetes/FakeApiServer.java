@@ -0,0 +1,594 @@
+package com.github.yue9944882.kubernetes;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.JSON;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// An in-process stand-in for the api-server, answering the requests of an api-client from memory. it serves
+// the pods and replicasets with list, watch, get, create, delete, json-patch and the merge-patch of the
+// replicaset status, which is what the controller issues. the created pods are running and ready at once,
+// as there's no kubelet. every request but the list/watch waits for the injected latency, and the requests
+// other than list/watch fail with a 500 at the injected error rate.
+//
+// the events are kept in a bounded history for the watches resuming from a resource-version, a watch
+// resuming from beyond the history gets a 410 so that the informer re-lists like against a real api-server.
+public class FakeApiServer implements Interceptor {
+
+    private static final MediaType APPLICATION_JSON = MediaType.parse("application/json");
+
+    private static final String RESOURCE_PODS = "pods";
+
+    private static final String RESOURCE_REPLICASETS = "replicasets";
+
+    private static final Pattern CLUSTER_PATH = Pattern.compile("^/(?:api/v1|apis/apps/v1)/(pods|replicasets)$");
+
+    private static final Pattern NAMESPACED_PATH = Pattern.compile(
+            "^/(?:api/v1|apis/apps/v1)/namespaces/([^/]+)/(pods|replicasets)(?:/([^/]+))?(/status)?$");
+
+    // ends a watch stream.
+    private static final String END_OF_WATCH = "";
+
+    private final Gson gson = new JSON().getGson();
+
+    private final Duration latency;
+
+    private final double errorRate;
+
+    private final int historyLimit;
+
+    private final Map<String, TreeMap<String, JsonObject>> store = new HashMap<>();
+
+    private final Deque<Event> history = new ArrayDeque<>();
+
+    private final List<Watcher> watchers = new CopyOnWriteArrayList<>();
+
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+
+    private long resourceVersion = 0;
+
+    private long generatedNames = 0;
+
+    public FakeApiServer(Duration latency, double errorRate, int historyLimit) {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.historyLimit = historyLimit;
+        // sorted by key, so that a list is paginated by the last key of the previous page.
+        this.store.put(RESOURCE_PODS, new TreeMap<>());
+        this.store.put(RESOURCE_REPLICASETS, new TreeMap<>());
+    }
+
+    // an api-client whose requests never leave the process.
+    public ApiClient apiClient() {
+        ApiClient apiClient = new ApiClient();
+        apiClient.setBasePath("http://fake-apiserver.invalid");
+        apiClient.setHttpClient(apiClient.getHttpClient().newBuilder()
+                .addInterceptor(this)
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .build());
+        return apiClient;
+    }
+
+    // creates the object directly, e.g. to seed the replicasets before the controller starts.
+    public synchronized JsonObject create(String resource, Object object) {
+        JsonObject created = gson.toJsonTree(object).getAsJsonObject();
+        JsonObject metadata = created.getAsJsonObject("metadata");
+        String key = metadata.get("namespace").getAsString() + "/" + metadata.get("name").getAsString();
+        metadata.addProperty("uid", UUID.randomUUID().toString());
+        metadata.addProperty("creationTimestamp", now());
+        if (!metadata.has("generation")) {
+            metadata.addProperty("generation", 1);
+        }
+        write(resource, key, created, "ADDED");
+        return created;
+    }
+
+    // a snapshot of the objects, which must not be modified.
+    public synchronized List<JsonObject> list(String resource) {
+        return new ArrayList<>(store.get(resource).values());
+    }
+
+    // the number of requests per "VERB resource" other than the list/watch.
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        requestCounts.forEach((request, count) -> counts.put(request, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        HttpUrl url = request.url();
+        Matcher cluster = CLUSTER_PATH.matcher(url.encodedPath());
+        if (cluster.matches() && "GET".equals(request.method())) {
+            String resource = cluster.group(1);
+            if ("true".equals(url.queryParameter("watch"))) {
+                return watch(request, resource, url.queryParameter("resourceVersion"), url.queryParameter("timeoutSeconds"));
+            }
+            sleepLatency();
+            return listResponse(request, resource, url.queryParameter("limit"), url.queryParameter("continue"));
+        }
+        Matcher namespaced = NAMESPACED_PATH.matcher(url.encodedPath());
+        if (!namespaced.matches()) {
+            return status(request, 404, "NotFound", "unknown path " + url.encodedPath());
+        }
+        String namespace = namespaced.group(1);
+        String resource = namespaced.group(2);
+        String name = namespaced.group(3);
+        boolean statusSubresource = namespaced.group(4) != null;
+        String counted = request.method() + " " + resource + (statusSubresource ? "/status" : "");
+        requestCounts.computeIfAbsent(counted, key -> new LongAdder()).increment();
+        sleepLatency();
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            return status(request, 500, "InternalError", "injected error");
+        }
+        JsonElement body = null;
+        if (request.body() != null) {
+            Buffer buffer = new Buffer();
+            request.body().writeTo(buffer);
+            body = JsonParser.parseString(buffer.readUtf8());
+        }
+        synchronized (this) {
+            if (name == null) {
+                if ("POST".equals(request.method()) && RESOURCE_PODS.equals(resource)) {
+                    return respond(request, 201, createPod(namespace, body.getAsJsonObject()));
+                }
+                return status(request, 405, "MethodNotAllowed", request.method() + " " + url.encodedPath());
+            }
+            String key = namespace + "/" + name;
+            JsonObject stored = store.get(resource).get(key);
+            if (stored == null) {
+                return status(request, 404, "NotFound", resource + " " + key + " not found");
+            }
+            switch (request.method()) {
+                case "GET":
+                    return respond(request, 200, stored);
+                case "DELETE":
+                    store.get(resource).remove(key);
+                    JsonObject deleted = stored.deepCopy();
+                    deleted.getAsJsonObject("metadata").addProperty("resourceVersion", String.valueOf(++resourceVersion));
+                    notify(resource, "DELETED", deleted);
+                    return respond(request, 200, deleted);
+                case "PATCH":
+                    return patch(request, resource, key, stored, body, statusSubresource);
+                default:
+                    return status(request, 405, "MethodNotAllowed", request.method() + " " + url.encodedPath());
+            }
+        }
+    }
+
+    private JsonObject createPod(String namespace, JsonObject pod) {
+        JsonObject metadata = pod.getAsJsonObject("metadata");
+        if (!metadata.has("name")) {
+            metadata.addProperty("name", metadata.get("generateName").getAsString() + Long.toString(++generatedNames, 36));
+        }
+        metadata.addProperty("namespace", namespace);
+        metadata.addProperty("uid", UUID.randomUUID().toString());
+        metadata.addProperty("creationTimestamp", now());
+        // no kubelet, the pod is running and ready right away.
+        pod.getAsJsonObject("spec").addProperty("nodeName", "fake-node");
+        JsonObject ready = new JsonObject();
+        ready.addProperty("type", "Ready");
+        ready.addProperty("status", "True");
+        ready.addProperty("lastTransitionTime", now());
+        JsonArray conditions = new JsonArray();
+        conditions.add(ready);
+        JsonObject status = new JsonObject();
+        status.addProperty("phase", "Running");
+        status.add("conditions", conditions);
+        pod.add("status", status);
+        write(RESOURCE_PODS, namespace + "/" + metadata.get("name").getAsString(), pod, "ADDED");
+        return pod;
+    }
+
+    private Response patch(Request request, String resource, String key, JsonObject stored, JsonElement body, boolean statusSubresource) {
+        String contentType = request.body().contentType() == null ? "" : request.body().contentType().toString();
+        JsonObject patched = stored.deepCopy();
+        if (contentType.startsWith("application/json-patch+json")) {
+            try {
+                applyJsonPatch(patched, body.getAsJsonArray());
+            } catch (IllegalArgumentException e) {
+                return status(request, 422, "Invalid", e.getMessage());
+            }
+        } else if (contentType.startsWith("application/merge-patch+json")) {
+            patched = mergePatch(patched, body).getAsJsonObject();
+        } else {
+            return status(request, 415, "UnsupportedMediaType", contentType);
+        }
+        if (statusSubresource) {
+            // only the status may be changed via the subresource.
+            JsonObject status = patched.getAsJsonObject("status");
+            patched = stored.deepCopy();
+            patched.add("status", status);
+        }
+        if (!statusSubresource && RESOURCE_PODS.equals(resource) && controllerRefs(patched) > 1) {
+            return status(request, 422, "Invalid", "only one reference can have controller set to true");
+        }
+        write(resource, key, patched, "MODIFIED");
+        return respond(request, 200, patched);
+    }
+
+    private static int controllerRefs(JsonObject object) {
+        JsonArray refs = object.getAsJsonObject("metadata").getAsJsonArray("ownerReferences");
+        int count = 0;
+        if (refs != null) {
+            for (JsonElement ref : refs) {
+                JsonElement controller = ref.getAsJsonObject().get("controller");
+                if (controller != null && controller.getAsBoolean()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void write(String resource, String key, JsonObject object, String type) {
+        object.getAsJsonObject("metadata").addProperty("resourceVersion", String.valueOf(++resourceVersion));
+        store.get(resource).put(key, object);
+        notify(resource, type, object);
+    }
+
+    private void notify(String resource, String type, JsonObject object) {
+        JsonObject event = new JsonObject();
+        event.addProperty("type", type);
+        event.add("object", object);
+        String line = gson.toJson(event);
+        history.addLast(new Event(resourceVersion, resource, line));
+        if (history.size() > historyLimit) {
+            history.removeFirst();
+        }
+        for (Watcher watcher : watchers) {
+            if (watcher.resource.equals(resource)) {
+                watcher.events.add(line);
+            }
+        }
+    }
+
+    // unlike the apiserver, the continued pages are listed from the current objects rather than a snapshot.
+    private synchronized Response listResponse(Request request, String resource, String limit, String continueToken) throws IOException {
+        TreeMap<String, JsonObject> objects = store.get(resource);
+        Collection<JsonObject> items = continueToken == null ? objects.values() : objects.tailMap(continueToken, false).values();
+        int pageSize = limit == null ? Integer.MAX_VALUE : Integer.parseInt(limit);
+        Buffer buffer = new Buffer();
+        // streaming the items rather than building the whole list as a tree.
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(buffer.outputStream(), StandardCharsets.UTF_8));
+        writer.beginObject();
+        writer.name("kind").value(RESOURCE_PODS.equals(resource) ? "PodList" : "ReplicaSetList");
+        writer.name("apiVersion").value(RESOURCE_PODS.equals(resource) ? "v1" : "apps/v1");
+        writer.name("items").beginArray();
+        String lastKey = null;
+        int count = 0;
+        for (JsonObject item : items) {
+            if (count == pageSize) {
+                break;
+            }
+            gson.toJson(item, writer);
+            JsonObject metadata = item.getAsJsonObject("metadata");
+            lastKey = metadata.get("namespace").getAsString() + "/" + metadata.get("name").getAsString();
+            count++;
+        }
+        writer.endArray();
+        writer.name("metadata").beginObject().name("resourceVersion").value(String.valueOf(resourceVersion));
+        if (count == pageSize && objects.higherKey(lastKey) != null) {
+            writer.name("continue").value(lastKey);
+        }
+        writer.endObject();
+        writer.endObject();
+        writer.flush();
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(APPLICATION_JSON, buffer.size(), buffer))
+                .build();
+    }
+
+    private Response watch(Request request, String resource, String fromResourceVersion, String timeoutSeconds) {
+        long timeout = timeoutSeconds == null ? TimeUnit.MINUTES.toNanos(5) : TimeUnit.SECONDS.toNanos(Long.parseLong(timeoutSeconds));
+        Watcher watcher = new Watcher(resource);
+        synchronized (this) {
+            if (fromResourceVersion == null || fromResourceVersion.isEmpty() || "0".equals(fromResourceVersion)) {
+                for (JsonObject object : store.get(resource).values()) {
+                    JsonObject event = new JsonObject();
+                    event.addProperty("type", "ADDED");
+                    event.add("object", object);
+                    watcher.events.add(gson.toJson(event));
+                }
+            } else {
+                long from = Long.parseLong(fromResourceVersion);
+                if (from < resourceVersion && (history.isEmpty() || history.peekFirst().resourceVersion > from + 1)) {
+                    watcher.events.add(gson.toJson(expiredEvent(from)));
+                    watcher.events.add(END_OF_WATCH);
+                } else {
+                    for (Event event : history) {
+                        if (event.resourceVersion > from && event.resource.equals(resource)) {
+                            watcher.events.add(event.line);
+                        }
+                    }
+                }
+            }
+            watchers.add(watcher);
+        }
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(APPLICATION_JSON, -1, Okio.buffer(new WatchSource(watcher, System.nanoTime() + timeout))))
+                .build();
+    }
+
+    private JsonObject expiredEvent(long from) {
+        JsonObject status = new JsonObject();
+        status.addProperty("kind", "Status");
+        status.addProperty("apiVersion", "v1");
+        status.addProperty("status", "Failure");
+        status.addProperty("reason", "Expired");
+        status.addProperty("message", "too old resource version: " + from + " (" + resourceVersion + ")");
+        status.addProperty("code", 410);
+        JsonObject event = new JsonObject();
+        event.addProperty("type", "ERROR");
+        event.add("object", status);
+        return event;
+    }
+
+    private Response respond(Request request, int code, JsonObject object) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("OK")
+                .body(ResponseBody.create(APPLICATION_JSON, gson.toJson(object)))
+                .build();
+    }
+
+    private Response status(Request request, int code, String reason, String message) {
+        JsonObject status = new JsonObject();
+        status.addProperty("kind", "Status");
+        status.addProperty("apiVersion", "v1");
+        status.addProperty("status", "Failure");
+        status.addProperty("reason", reason);
+        status.addProperty("message", message);
+        status.addProperty("code", code);
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(reason)
+                .body(ResponseBody.create(APPLICATION_JSON, gson.toJson(status)))
+                .build();
+    }
+
+    private void sleepLatency() throws InterruptedIOException {
+        if (latency.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(latency.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static String now() {
+        return OffsetDateTime.now(ZoneOffset.UTC).toString();
+    }
+
+    // applies the add/remove/replace/test operations of a json-patch (RFC 6902).
+    static void applyJsonPatch(JsonObject target, JsonArray ops) {
+        for (JsonElement element : ops) {
+            JsonObject op = element.getAsJsonObject();
+            String path = op.get("path").getAsString();
+            JsonElement value = op.get("value");
+            String[] tokens = path.substring(1).split("/", -1);
+            JsonElement parent = target;
+            for (int i = 0; i < tokens.length - 1; i++) {
+                parent = child(parent, unescape(tokens[i]), path);
+            }
+            String last = unescape(tokens[tokens.length - 1]);
+            switch (op.get("op").getAsString()) {
+                case "test":
+                    if (!child(parent, last, path).equals(value)) {
+                        throw new IllegalArgumentException("the value at " + path + " doesn't match");
+                    }
+                    break;
+                case "add":
+                    if (parent.isJsonObject()) {
+                        parent.getAsJsonObject().add(last, value.deepCopy());
+                    } else {
+                        JsonArray array = parent.getAsJsonArray();
+                        int index = "-".equals(last) ? array.size() : index(array, last, path, true);
+                        List<JsonElement> elements = new ArrayList<>();
+                        array.forEach(elements::add);
+                        elements.add(index, value.deepCopy());
+                        while (array.size() > 0) {
+                            array.remove(0);
+                        }
+                        elements.forEach(array::add);
+                    }
+                    break;
+                case "remove":
+                    child(parent, last, path);
+                    if (parent.isJsonObject()) {
+                        parent.getAsJsonObject().remove(last);
+                    } else {
+                        parent.getAsJsonArray().remove(index(parent.getAsJsonArray(), last, path, false));
+                    }
+                    break;
+                case "replace":
+                    child(parent, last, path);
+                    if (parent.isJsonObject()) {
+                        parent.getAsJsonObject().add(last, value.deepCopy());
+                    } else {
+                        parent.getAsJsonArray().set(index(parent.getAsJsonArray(), last, path, false), value.deepCopy());
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unsupported json-patch operation " + op.get("op"));
+            }
+        }
+    }
+
+    private static JsonElement child(JsonElement parent, String token, String path) {
+        JsonElement child = null;
+        if (parent != null && parent.isJsonObject()) {
+            child = parent.getAsJsonObject().get(token);
+        } else if (parent != null && parent.isJsonArray()) {
+            child = parent.getAsJsonArray().get(index(parent.getAsJsonArray(), token, path, false));
+        }
+        if (child == null) {
+            throw new IllegalArgumentException("no value at " + path);
+        }
+        return child;
+    }
+
+    private static int index(JsonArray array, String token, String path, boolean inclusive) {
+        try {
+            int index = Integer.parseInt(token);
+            if (index >= 0 && (index < array.size() || inclusive && index == array.size())) {
+                return index;
+            }
+        } catch (NumberFormatException e) {
+            // falls through
+        }
+        throw new IllegalArgumentException("invalid array index at " + path);
+    }
+
+    private static String unescape(String token) {
+        return token.replace("~1", "/").replace("~0", "~");
+    }
+
+    // applies a json merge-patch (RFC 7386).
+    static JsonElement mergePatch(JsonElement target, JsonElement patch) {
+        if (!patch.isJsonObject()) {
+            return patch.deepCopy();
+        }
+        JsonObject result = target != null && target.isJsonObject() ? target.getAsJsonObject() : new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : patch.getAsJsonObject().entrySet()) {
+            if (entry.getValue() instanceof JsonNull) {
+                result.remove(entry.getKey());
+            } else {
+                result.add(entry.getKey(), mergePatch(result.get(entry.getKey()), entry.getValue()));
+            }
+        }
+        return result;
+    }
+
+    private static class Event {
+        private final long resourceVersion;
+        private final String resource;
+        private final String line;
+
+        private Event(long resourceVersion, String resource, String line) {
+            this.resourceVersion = resourceVersion;
+            this.resource = resource;
+            this.line = line;
+        }
+    }
+
+    private static class Watcher {
+        private final String resource;
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        private Watcher(String resource) {
+            this.resource = resource;
+        }
+    }
+
+    // streams the events of the watcher as lines until the watch times out or is closed.
+    private class WatchSource implements Source {
+
+        private final Watcher watcher;
+
+        private final long deadlineNanos;
+
+        private final Buffer pending = new Buffer();
+
+        private volatile boolean closed;
+
+        private WatchSource(Watcher watcher, long deadlineNanos) {
+            this.watcher = watcher;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            while (pending.size() == 0) {
+                long remaining = deadlineNanos - System.nanoTime();
+                if (closed || remaining <= 0) {
+                    return -1;
+                }
+                String line;
+                try {
+                    line = watcher.events.poll(Math.min(remaining, TimeUnit.SECONDS.toNanos(1)), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                if (END_OF_WATCH.equals(line)) {
+                    return -1;
+                }
+                if (line != null) {
+                    pending.writeUtf8(line).writeByte('\n');
+                }
+            }
+            return pending.read(sink, Math.min(byteCount, pending.size()));
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            watchers.remove(watcher);
+        }
+    }
+}
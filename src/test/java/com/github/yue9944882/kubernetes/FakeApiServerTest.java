@@ -0,0 +1,75 @@
+package com.github.yue9944882.kubernetes;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FakeApiServerTest {
+
+    private static final String POD = "{\"metadata\": {\"name\": \"pod-1\", \"uid\": \"uid-pod-1\", \"resourceVersion\": \"7\","
+            + " \"labels\": {\"app\": \"web\", \"example.com/tier\": \"front\"},"
+            + " \"ownerReferences\": [{\"kind\": \"ConfigMap\", \"uid\": \"uid-config\"}]}}";
+
+    @Test
+    public void testJsonPatchAdd() {
+        JsonObject pod = json(POD).getAsJsonObject();
+        FakeApiServer.applyJsonPatch(pod, json("["
+                + "{\"op\": \"add\", \"path\": \"/metadata/ownerReferences/-\", \"value\": {\"kind\": \"ReplicaSet\", \"uid\": \"uid-rs-1\"}},"
+                + "{\"op\": \"add\", \"path\": \"/metadata/ownerReferences/0\", \"value\": {\"kind\": \"Node\", \"uid\": \"uid-node-1\"}},"
+                + "{\"op\": \"add\", \"path\": \"/metadata/annotations\", \"value\": {\"a\": \"b\"}}]").getAsJsonArray());
+        assertEquals(json("[{\"kind\": \"Node\", \"uid\": \"uid-node-1\"}, {\"kind\": \"ConfigMap\", \"uid\": \"uid-config\"},"
+                + " {\"kind\": \"ReplicaSet\", \"uid\": \"uid-rs-1\"}]"), pod.getAsJsonObject("metadata").get("ownerReferences"));
+        assertEquals(json("{\"a\": \"b\"}"), pod.getAsJsonObject("metadata").get("annotations"));
+    }
+
+    @Test
+    public void testJsonPatchRemoveAndReplace() {
+        JsonObject pod = json(POD).getAsJsonObject();
+        FakeApiServer.applyJsonPatch(pod, json("["
+                + "{\"op\": \"test\", \"path\": \"/metadata/ownerReferences/0/uid\", \"value\": \"uid-config\"},"
+                + "{\"op\": \"remove\", \"path\": \"/metadata/ownerReferences/0\"},"
+                + "{\"op\": \"remove\", \"path\": \"/metadata/labels/example.com~1tier\"},"
+                + "{\"op\": \"replace\", \"path\": \"/metadata/name\", \"value\": \"pod-2\"}]").getAsJsonArray());
+        assertEquals(json("{\"name\": \"pod-2\", \"uid\": \"uid-pod-1\", \"resourceVersion\": \"7\", \"labels\": {\"app\": \"web\"},"
+                + " \"ownerReferences\": []}"), pod.get("metadata"));
+    }
+
+    @Test
+    public void testJsonPatchRejectsInvalidOperations() {
+        // failed preconditions, missing values and unsupported operations answer a 422.
+        assertInvalid("[{\"op\": \"test\", \"path\": \"/metadata/uid\", \"value\": \"uid-pod-2\"}]");
+        assertInvalid("[{\"op\": \"test\", \"path\": \"/metadata/resourceVersion\", \"value\": \"6\"}]");
+        assertInvalid("[{\"op\": \"remove\", \"path\": \"/metadata/ownerReferences/1\"}]");
+        assertInvalid("[{\"op\": \"add\", \"path\": \"/metadata/ownerReferences/2\", \"value\": {}}]");
+        assertInvalid("[{\"op\": \"replace\", \"path\": \"/metadata/annotations/a\", \"value\": \"b\"}]");
+        assertInvalid("[{\"op\": \"move\", \"from\": \"/metadata/name\", \"path\": \"/metadata/uid\"}]");
+    }
+
+    @Test
+    public void testMergePatch() {
+        JsonElement patched = FakeApiServer.mergePatch(json(POD), json("{\"metadata\": {"
+                + "\"labels\": {\"example.com/tier\": null, \"version\": \"2\"},"
+                + " \"ownerReferences\": [{\"kind\": \"ReplicaSet\", \"uid\": \"uid-rs-1\"}],"
+                + " \"resourceVersion\": null},"
+                + " \"status\": {\"replicas\": 3}}"));
+        // objects are merged, arrays and scalars replaced and nulls removed.
+        assertEquals(json("{\"metadata\": {\"name\": \"pod-1\", \"uid\": \"uid-pod-1\","
+                + " \"labels\": {\"app\": \"web\", \"version\": \"2\"},"
+                + " \"ownerReferences\": [{\"kind\": \"ReplicaSet\", \"uid\": \"uid-rs-1\"}]},"
+                + " \"status\": {\"replicas\": 3}}"), patched);
+        assertEquals(json("[1]"), FakeApiServer.mergePatch(json(POD), json("[1]")));
+    }
+
+    private static void assertInvalid(String ops) {
+        JsonObject pod = json(POD).getAsJsonObject();
+        assertThrows(IllegalArgumentException.class, () -> FakeApiServer.applyJsonPatch(pod, json(ops).getAsJsonArray()));
+    }
+
+    private static JsonElement json(String json) {
+        return JsonParser.parseString(json);
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.yue9944882.kubernetes;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// advances the wheel by hand upon a manual clock, in ticks of 10ms.
+public class HashedWheelSchedulerTest {
+
+    private static final Duration TICK = Duration.ofMillis(10);
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    // the times each key fired at, in milliseconds since the scheduler was created.
+    private final Map<String, List<Long>> firedMillis = new HashMap<>();
+
+    private HashedWheelScheduler<String> scheduler;
+
+    private long startNanos;
+
+    private HashedWheelScheduler<String> newScheduler(int slots) {
+        startNanos = clock.get();
+        return new HashedWheelScheduler<>(TICK, slots, this::fired, clock::get, null);
+    }
+
+    private void fired(String key) {
+        firedMillis.computeIfAbsent(key, k -> new ArrayList<>()).add(elapsedMillis());
+    }
+
+    @Test
+    public void testFiresAfterDelay() {
+        scheduler = newScheduler(64);
+        scheduler.schedule("a", Duration.ofMillis(50));
+        assertEquals(1, scheduler.size());
+        ticksUntil(50);
+        assertNull(firedMillis.get("a"));
+        // the first tick strictly after the deadline.
+        ticksUntil(60);
+        assertEquals(Arrays.asList(60L), firedMillis.get("a"));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testRoundsDeadlineUpToNextTick() {
+        scheduler = newScheduler(64);
+        advanceTo(15);
+        scheduler.schedule("a", Duration.ofMillis(50));
+        scheduler.schedule("b", Duration.ZERO);
+        ticksUntil(100);
+        assertEquals(Arrays.asList(70L), firedMillis.get("a"));
+        assertEquals(Arrays.asList(20L), firedMillis.get("b"));
+    }
+
+    @Test
+    public void testKeepsEarliestDeadline() {
+        scheduler = newScheduler(64);
+        // a later deadline doesn't postpone a pending key.
+        scheduler.schedule("a", Duration.ofMillis(50));
+        scheduler.schedule("a", Duration.ofMillis(400));
+        // an earlier deadline replaces the pending one.
+        scheduler.schedule("b", Duration.ofMillis(400));
+        scheduler.schedule("b", Duration.ofMillis(50));
+        assertEquals(2, scheduler.size());
+        ticksUntil(1000);
+        // each key fired once.
+        assertEquals(Arrays.asList(60L), firedMillis.get("a"));
+        assertEquals(Arrays.asList(60L), firedMillis.get("b"));
+    }
+
+    @Test
+    public void testFiresAcrossFullRotations() {
+        // a revolution of the wheel is 80ms.
+        scheduler = newScheduler(8);
+        // shares the slot of "near", but is due two revolutions later.
+        scheduler.schedule("far", Duration.ofMillis(200));
+        scheduler.schedule("near", Duration.ofMillis(40));
+        ticksUntil(200);
+        assertEquals(Arrays.asList(50L), firedMillis.get("near"));
+        assertNull(firedMillis.get("far"));
+        assertEquals(1, scheduler.size());
+        ticksUntil(400);
+        assertEquals(Arrays.asList(210L), firedMillis.get("far"));
+    }
+
+    @Test
+    public void testCatchesUpOnMissedTicks() {
+        scheduler = newScheduler(8);
+        for (int i = 0; i < 20; i++) {
+            scheduler.schedule("key-" + i, Duration.ofMillis(10 * i));
+        }
+        scheduler.schedule("later", Duration.ofMillis(600));
+        // a ticker run delayed by more than a revolution still visits every slot once.
+        advanceTo(500);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Arrays.asList(500L), firedMillis.get("key-" + i), "key-" + i);
+        }
+        assertNull(firedMillis.get("later"));
+        ticksUntil(1000);
+        assertEquals(Arrays.asList(610L), firedMillis.get("later"));
+    }
+
+    @Test
+    public void testReschedulesFromCallback() {
+        startNanos = clock.get();
+        scheduler = new HashedWheelScheduler<>(TICK, 8, key -> {
+            fired(key);
+            if (firedMillis.get(key).size() < 3) {
+                scheduler.schedule(key, Duration.ofMillis(20));
+            }
+        }, clock::get, null);
+        scheduler.schedule("a", Duration.ofMillis(20));
+        ticksUntil(500);
+        assertEquals(Arrays.asList(30L, 60L, 90L), firedMillis.get("a"));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testManyKeysInOneSlot() {
+        scheduler = newScheduler(4);
+        for (int i = 0; i < 1000; i++) {
+            scheduler.schedule("key-" + i, Duration.ofMillis(10 * (i % 20)));
+        }
+        ticksUntil(300);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Arrays.asList(10L * (i % 20) + 10), firedMillis.get("key-" + i), "key-" + i);
+        }
+        assertEquals(0, scheduler.size());
+    }
+
+    // advances the wheel upon every tick, like its ticker.
+    private void ticksUntil(long millis) {
+        while (elapsedMillis() < millis) {
+            advanceTo((elapsedMillis() / TICK.toMillis() + 1) * TICK.toMillis());
+        }
+    }
+
+    private void advanceTo(long millis) {
+        clock.set(startNanos + TimeUnit.MILLISECONDS.toNanos(millis));
+        scheduler.advance();
+    }
+
+    private long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(clock.get() - startNanos);
+    }
+}
@@ -0,0 +1,176 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.JSON;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1ReplicaSet;
+import io.kubernetes.client.openapi.models.V1ReplicaSetList;
+import io.kubernetes.client.openapi.models.V1Status;
+import io.kubernetes.client.util.CallGeneratorParams;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PaginatedListerWatcherTest {
+
+    private final JSON json = new JSON();
+
+    private FakeApiServer apiServer;
+
+    // the list requests reaching the fake api-server, and the resource-versions of the lists answered.
+    private final List<HttpUrl> requests = new ArrayList<>();
+
+    private final List<String> resourceVersions = new ArrayList<>();
+
+    // runs before the n-th list request reaches the fake api-server.
+    private Consumer<Integer> beforeRequest = index -> {
+    };
+
+    // the status code failing the n-th list request instead of the fake api-server, if any.
+    private Function<Integer, Integer> failures = index -> null;
+
+    @BeforeEach
+    public void setUp() {
+        apiServer = new FakeApiServer(Duration.ZERO, 0, 1000);
+        for (int i = 0; i < 25; i++) {
+            apiServer.create("replicasets", new V1ReplicaSet().metadata(new V1ObjectMeta().namespace("default").name(String.format("rs-%02d", i))));
+        }
+    }
+
+    @Test
+    public void testListsPageByPage() throws ApiException {
+        V1ReplicaSetList list = listerWatcher(10).list(new CallGeneratorParams(false, "0", 300));
+        assertEquals(names(0, 25), names(list));
+        assertEquals(Arrays.asList(null, "default/rs-09", "default/rs-19"), query("continue"));
+        assertEquals(Arrays.asList("10", "10", "10"), query("limit"));
+        // every page is a consistent read, rather than served from the watch cache at "0".
+        assertEquals(Arrays.asList(null, null, null), query("resourceVersion"));
+        assertNull(list.getMetadata().getContinue());
+    }
+
+    @Test
+    public void testListsFromTheLastPage() throws ApiException {
+        // unlike the api-server, the fake lists the continued pages from the current objects, so a write
+        // between the pages bumps the resource-version of the later ones.
+        beforeRequest = index -> {
+            if (index > 0) {
+                // sorted before the continue tokens, not listed.
+                apiServer.create("replicasets", new V1ReplicaSet().metadata(new V1ObjectMeta().namespace("a").name("rs-" + index)));
+            }
+        };
+        V1ReplicaSetList list = listerWatcher(10).list(new CallGeneratorParams(false, "0", 300));
+        assertEquals(names(0, 25), names(list));
+        assertEquals(3, new HashSet<>(resourceVersions).size());
+        assertEquals(resourceVersions.get(2), list.getMetadata().getResourceVersion());
+    }
+
+    @Test
+    public void testRelistsInSingleResponseOnceContinueExpired() throws ApiException {
+        failures = index -> index == 2 ? 410 : null;
+        V1ReplicaSetList list = listerWatcher(10).list(new CallGeneratorParams(false, "0", 300));
+        assertEquals(names(0, 25), names(list));
+        assertEquals(Arrays.asList(null, "default/rs-09", "default/rs-19", null), query("continue"));
+        assertEquals(Arrays.asList("10", "10", "10", null), query("limit"));
+        assertEquals(resourceVersions.get(resourceVersions.size() - 1), list.getMetadata().getResourceVersion());
+    }
+
+    @Test
+    public void testFailsOnOtherErrors() {
+        failures = index -> index == 1 ? 500 : null;
+        ApiException e = assertThrows(ApiException.class, () -> listerWatcher(10).list(new CallGeneratorParams(false, "0", 300)));
+        assertEquals(500, e.getCode());
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void testListsInSingleResponse() throws ApiException {
+        V1ReplicaSetList list = listerWatcher(0).list(new CallGeneratorParams(false, "0", 300));
+        assertEquals(names(0, 25), names(list));
+        assertEquals(Collections.singletonList(null), query("limit"));
+        // served from the watch cache, as asked by the informer.
+        assertEquals(Collections.singletonList("0"), query("resourceVersion"));
+
+        requests.clear();
+        list = listerWatcher(100).list(new CallGeneratorParams(false, "0", 300));
+        assertEquals(names(0, 25), names(list));
+        assertEquals(Collections.singletonList("100"), query("limit"));
+    }
+
+    private ReplicaSetListerWatcher listerWatcher(int pageSize) {
+        ApiClient apiClient = apiServer.apiClient();
+        OkHttpClient.Builder httpClient = apiClient.getHttpClient().newBuilder();
+        // ahead of the fake api-server.
+        httpClient.interceptors().add(0, recorder());
+        apiClient.setHttpClient(httpClient.build());
+        return new ReplicaSetListerWatcher(apiClient, pageSize);
+    }
+
+    private Interceptor recorder() {
+        return chain -> {
+            int index = requests.size();
+            requests.add(chain.request().url());
+            beforeRequest.accept(index);
+            Integer failure = failures.apply(index);
+            if (failure != null) {
+                return status(chain.request(), failure);
+            }
+            Response response = chain.proceed(chain.request());
+            V1ReplicaSetList list = json.deserialize(response.peekBody(Long.MAX_VALUE).string(), V1ReplicaSetList.class);
+            resourceVersions.add(list.getMetadata().getResourceVersion());
+            return response;
+        };
+    }
+
+    private Response status(Request request, int code) {
+        V1Status status = new V1Status()
+                .kind("Status")
+                .apiVersion("v1")
+                .status("Failure")
+                .code(code);
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("Failure")
+                .body(ResponseBody.create(MediaType.parse("application/json"), json.serialize(status)))
+                .build();
+    }
+
+    private List<String> query(String name) {
+        return requests.stream().map(url -> url.queryParameter(name)).collect(Collectors.toList());
+    }
+
+    private static List<String> names(int from, int to) {
+        List<String> names = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            names.add(String.format("rs-%02d", i));
+        }
+        return names;
+    }
+
+    private static List<String> names(V1ReplicaSetList list) {
+        return list.getItems().stream().map(rs -> rs.getMetadata().getName()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.openapi.models.V1Container;
+import io.kubernetes.client.openapi.models.V1ContainerStatus;
+import io.kubernetes.client.openapi.models.V1LabelSelector;
+import io.kubernetes.client.openapi.models.V1ManagedFieldsEntry;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1OwnerReference;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodCondition;
+import io.kubernetes.client.openapi.models.V1PodSpec;
+import io.kubernetes.client.openapi.models.V1PodStatus;
+import io.kubernetes.client.proto.Meta;
+import io.kubernetes.client.proto.V1;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PodProjectionTest {
+
+    private static final OffsetDateTime CREATED = OffsetDateTime.parse("2020-10-01T00:00:00Z");
+
+    private static final OffsetDateTime READY = OffsetDateTime.parse("2020-10-01T00:00:30Z");
+
+    private static final OffsetDateTime DELETED = OffsetDateTime.parse("2020-10-01T01:00:00Z");
+
+    // every field the reconciler reads survives the projection.
+    @Test
+    public void testKeepsFieldsReadByReconciler() {
+        V1Pod pod = fullPod(DELETED);
+        V1Pod projected = PodProjection.project(pod);
+
+        assertEquals(pod.getMetadata().getName(), projected.getMetadata().getName());
+        assertEquals(pod.getMetadata().getNamespace(), projected.getMetadata().getNamespace());
+        assertEquals(pod.getMetadata().getUid(), projected.getMetadata().getUid());
+        assertEquals(pod.getMetadata().getResourceVersion(), projected.getMetadata().getResourceVersion());
+        assertEquals(pod.getMetadata().getCreationTimestamp(), projected.getMetadata().getCreationTimestamp());
+        assertEquals(pod.getMetadata().getDeletionTimestamp(), projected.getMetadata().getDeletionTimestamp());
+        assertEquals(pod.getMetadata().getLabels(), projected.getMetadata().getLabels());
+        assertEquals(pod.getMetadata().getOwnerReferences(), projected.getMetadata().getOwnerReferences());
+        assertEquals(pod.getSpec().getNodeName(), projected.getSpec().getNodeName());
+        assertEquals(pod.getStatus().getPhase(), projected.getStatus().getPhase());
+        assertEquals(Utils.getPodCondition(pod, "Ready"), Utils.getPodCondition(projected, "Ready"));
+        assertEquals(2, projected.getStatus().getContainerStatuses().size());
+        assertEquals(3, (int) projected.getStatus().getContainerStatuses().get(1).getRestartCount());
+
+        // the helpers of the reconciler see the same pod.
+        assertEquals(Utils.getReplicaSetControllerOwnerRef(pod), Utils.getReplicaSetControllerOwnerRef(projected));
+        assertEquals(Utils.isPodActive(pod), Utils.isPodActive(projected));
+        assertEquals(Utils.isPodReady(pod), Utils.isPodReady(projected));
+        assertEquals(Utils.availableAt(pod, 10), Utils.availableAt(projected, 10));
+        // ranked by the restarts of the sidecar.
+        V1Pod other = fullPod(null);
+        other.getStatus().getContainerStatuses().get(1).restartCount(0);
+        assertTrue(ActivePodsComparator.INSTANCE.compare(pod, other) < 0);
+        assertTrue(ActivePodsComparator.INSTANCE.compare(projected, PodProjection.project(other)) < 0);
+        PodSelector selector = PodSelector.compile(new V1LabelSelector().putMatchLabelsItem("app", "web"));
+        assertTrue(selector.matches(projected.getMetadata().getLabels()));
+    }
+
+    @Test
+    public void testDropsFieldsNotReadByReconciler() {
+        V1Pod projected = PodProjection.project(fullPod(null));
+        assertNull(projected.getMetadata().getAnnotations());
+        assertNull(projected.getMetadata().getManagedFields());
+        assertNull(projected.getSpec().getContainers());
+        assertEquals(1, projected.getStatus().getConditions().size());
+        assertEquals("Ready", projected.getStatus().getConditions().get(0).getType());
+        assertNull(projected.getStatus().getContainerStatuses().get(0).getImage());
+    }
+
+    // the pods listed in the protobuf encoding are projected the same.
+    @Test
+    public void testProtobufProjectionMatchesJson() {
+        V1.Pod pod = V1.Pod.newBuilder()
+                .setMetadata(Meta.ObjectMeta.newBuilder()
+                        .setName("rs-1-abcde")
+                        .setNamespace("default")
+                        .setUid("uid-pod-1")
+                        .setResourceVersion("42")
+                        .setCreationTimestamp(time(CREATED))
+                        .setDeletionTimestamp(time(DELETED))
+                        .putLabels("app", "web")
+                        .putLabels("pod-template-hash", "abcde")
+                        .putAnnotations("kubectl.kubernetes.io/restartedAt", "2020-10-01T00:00:00Z")
+                        .addOwnerReferences(Meta.OwnerReference.newBuilder()
+                                .setApiVersion("apps/v1")
+                                .setKind("ReplicaSet")
+                                .setName("rs-1")
+                                .setUid("uid-rs-1")
+                                .setController(true)
+                                .setBlockOwnerDeletion(true)))
+                .setSpec(V1.PodSpec.newBuilder()
+                        .setNodeName("node-1")
+                        .addContainers(V1.Container.newBuilder().setName("app").setImage("nginx:1.7.9"))
+                        .addContainers(V1.Container.newBuilder().setName("sidecar").setImage("envoy:1.15")))
+                .setStatus(V1.PodStatus.newBuilder()
+                        .setPhase("Running")
+                        .addConditions(V1.PodCondition.newBuilder().setType("PodScheduled").setStatus("True").setLastTransitionTime(time(CREATED)))
+                        .addConditions(V1.PodCondition.newBuilder().setType("Ready").setStatus("True").setLastTransitionTime(time(READY)))
+                        .addContainerStatuses(V1.ContainerStatus.newBuilder().setName("app").setRestartCount(0).setImage("nginx:1.7.9"))
+                        .addContainerStatuses(V1.ContainerStatus.newBuilder().setName("sidecar").setRestartCount(3).setImage("envoy:1.15")))
+                .build();
+        assertEquals(PodProjection.project(fullPod(DELETED)), PodProjection.project(pod));
+    }
+
+    private static Meta.Time time(OffsetDateTime time) {
+        return Meta.Time.newBuilder()
+                .setSeconds(time.toEpochSecond())
+                .setNanos(time.getNano())
+                .build();
+    }
+
+    private static V1Pod fullPod(OffsetDateTime deletionTimestamp) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put("app", "web");
+        labels.put("pod-template-hash", "abcde");
+        return new V1Pod()
+                .apiVersion("v1")
+                .kind("Pod")
+                .metadata(new V1ObjectMeta()
+                        .name("rs-1-abcde")
+                        .namespace("default")
+                        .uid("uid-pod-1")
+                        .resourceVersion("42")
+                        .creationTimestamp(CREATED)
+                        .deletionTimestamp(deletionTimestamp)
+                        .labels(labels)
+                        .putAnnotationsItem("kubectl.kubernetes.io/restartedAt", "2020-10-01T00:00:00Z")
+                        .addManagedFieldsItem(new V1ManagedFieldsEntry().manager("kubelet").operation("Update"))
+                        .addOwnerReferencesItem(new V1OwnerReference()
+                                .apiVersion("apps/v1")
+                                .kind("ReplicaSet")
+                                .name("rs-1")
+                                .uid("uid-rs-1")
+                                .controller(true)
+                                .blockOwnerDeletion(true)))
+                .spec(new V1PodSpec()
+                        .nodeName("node-1")
+                        .addContainersItem(new V1Container().name("app").image("nginx:1.7.9"))
+                        .addContainersItem(new V1Container().name("sidecar").image("envoy:1.15")))
+                .status(new V1PodStatus()
+                        .phase("Running")
+                        .addConditionsItem(new V1PodCondition().type("PodScheduled").status("True").lastTransitionTime(CREATED))
+                        .addConditionsItem(new V1PodCondition().type("Ready").status("True").lastTransitionTime(READY))
+                        .addContainerStatusesItem(new V1ContainerStatus().name("app").restartCount(0).image("nginx:1.7.9"))
+                        .addContainerStatusesItem(new V1ContainerStatus().name("sidecar").restartCount(3).image("envoy:1.15")));
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.openapi.models.V1LabelSelector;
+import io.kubernetes.client.openapi.models.V1LabelSelectorRequirement;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PodSelectorTest {
+
+    @Test
+    public void testMatchLabels() {
+        PodSelector selector = PodSelector.compile(new V1LabelSelector()
+                .putMatchLabelsItem("app", "web")
+                .putMatchLabelsItem("tier", "frontend"));
+        assertTrue(selector.matches(labels("app", "web", "tier", "frontend", "pod-template-hash", "abc")));
+        assertFalse(selector.matches(labels("app", "web")));
+        assertFalse(selector.matches(labels("app", "db", "tier", "frontend")));
+        assertFalse(selector.matches(null));
+    }
+
+    @Test
+    public void testMatchExpressions() {
+        PodSelector selector = PodSelector.compile(new V1LabelSelector()
+                .addMatchExpressionsItem(requirement("app", "In", "web", "api"))
+                .addMatchExpressionsItem(requirement("env", "NotIn", "dev"))
+                .addMatchExpressionsItem(requirement("tier", "Exists"))
+                .addMatchExpressionsItem(requirement("canary", "DoesNotExist")));
+        assertTrue(selector.matches(labels("app", "web", "tier", "frontend")));
+        assertTrue(selector.matches(labels("app", "api", "env", "prod", "tier", "backend")));
+        assertFalse(selector.matches(labels("app", "db", "tier", "frontend")));
+        assertFalse(selector.matches(labels("app", "web", "env", "dev", "tier", "frontend")));
+        assertFalse(selector.matches(labels("app", "web")));
+        assertFalse(selector.matches(labels("app", "web", "tier", "frontend", "canary", "true")));
+    }
+
+    @Test
+    public void testNullSelectorMatchesNothing() {
+        PodSelector selector = PodSelector.compile(null);
+        assertFalse(selector.matches(labels("app", "web")));
+        assertFalse(selector.matches(Collections.emptyMap()));
+        assertFalse(selector.matches(null));
+    }
+
+    @Test
+    public void testEmptySelectorMatchesEverything() {
+        PodSelector selector = PodSelector.compile(new V1LabelSelector());
+        assertTrue(selector.matches(labels("app", "web")));
+        assertTrue(selector.matches(Collections.emptyMap()));
+        assertTrue(selector.matches(null));
+        assertEquals(-1, selector.equalityRequirement());
+    }
+
+    @Test
+    public void testUnsupportedOperator() {
+        assertThrows(IllegalArgumentException.class, () -> PodSelector.compile(new V1LabelSelector()
+                .addMatchExpressionsItem(requirement("app", "Gt", "1"))));
+    }
+
+    @Test
+    public void testEqualityRequirement() {
+        PodSelector selector = PodSelector.compile(new V1LabelSelector()
+                .addMatchExpressionsItem(requirement("app", "In", "web", "api"))
+                .addMatchExpressionsItem(requirement("tier", "In", "frontend")));
+        int requirement = selector.equalityRequirement();
+        assertEquals("tier", selector.getKey(requirement));
+        assertEquals("frontend", selector.getValue(requirement));
+
+        // no single value every matching pod must have.
+        assertEquals(-1, PodSelector.compile(new V1LabelSelector()
+                .addMatchExpressionsItem(requirement("app", "In", "web", "api"))
+                .addMatchExpressionsItem(requirement("tier", "Exists")))
+                .equalityRequirement());
+    }
+
+    private static V1LabelSelectorRequirement requirement(String key, String operator, String... values) {
+        V1LabelSelectorRequirement requirement = new V1LabelSelectorRequirement().key(key).operator(operator);
+        if (values.length > 0) {
+            requirement.values(Arrays.asList(values));
+        }
+        return requirement;
+    }
+
+    private static Map<String, String> labels(String... keyValues) {
+        Map<String, String> labels = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            labels.put(keyValues[i], keyValues[i + 1]);
+        }
+        return labels;
+    }
+}
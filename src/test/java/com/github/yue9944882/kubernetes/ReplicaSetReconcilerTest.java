@@ -0,0 +1,356 @@
+package com.github.yue9944882.kubernetes;
+
+import com.github.yue9944882.kubernetes.PriorityRateLimitingQueue.Lane;
+import io.kubernetes.client.extended.controller.reconciler.Request;
+import io.kubernetes.client.openapi.models.V1ContainerStatus;
+import io.kubernetes.client.openapi.models.V1LabelSelector;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1OwnerReference;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodCondition;
+import io.kubernetes.client.openapi.models.V1PodSpec;
+import io.kubernetes.client.openapi.models.V1PodStatus;
+import io.kubernetes.client.openapi.models.V1ReplicaSet;
+import io.kubernetes.client.openapi.models.V1ReplicaSetCondition;
+import io.kubernetes.client.openapi.models.V1ReplicaSetSpec;
+import io.kubernetes.client.openapi.models.V1ReplicaSetStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReplicaSetReconcilerTest {
+
+    private final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testSlowStartBatchDoublesBatches() throws Exception {
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        CompletableFuture<Integer> created = ReplicaSetReconciler.slowStartBatch(10, 1, () -> {
+            CompletableFuture<Void> call = new CompletableFuture<>();
+            pending.add(call);
+            return call;
+        }, errors);
+        // the batches of 1, 2, 4 and the remaining 3, each sent once the previous one completed.
+        for (int batch : new int[]{1, 2, 4, 3}) {
+            assertEquals(batch, pending.size());
+            List<CompletableFuture<Void>> calls = new ArrayList<>(pending);
+            pending.clear();
+            calls.forEach(call -> call.complete(null));
+        }
+        assertTrue(pending.isEmpty());
+        assertEquals(10, (int) created.get());
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void testSlowStartBatchStopsAfterFailedBatch() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        RuntimeException failure = new RuntimeException("forbidden");
+        CompletableFuture<Integer> created = ReplicaSetReconciler.slowStartBatch(10, 1, () -> {
+            CompletableFuture<Void> call = new CompletableFuture<>();
+            // fails the first call of the second batch.
+            if (calls.incrementAndGet() == 2) {
+                call.completeExceptionally(failure);
+            } else {
+                call.complete(null);
+            }
+            return call;
+        }, errors);
+        // the whole failed batch is sent, but no batch after it.
+        assertEquals(2, (int) created.get());
+        assertEquals(3, calls.get());
+        assertEquals(Collections.singletonList(failure), errors);
+    }
+
+    @Test
+    public void testSlowStartBatchWithNothingToDo() throws Exception {
+        CompletableFuture<Integer> created = ReplicaSetReconciler.slowStartBatch(0, 1, () -> {
+            throw new AssertionError("unexpected call");
+        }, errors);
+        assertEquals(0, (int) created.get());
+    }
+
+    @Test
+    public void testDiffStatusWithoutChanges() {
+        assertTrue(ReplicaSetReconciler.diffStatus(status(3, 3), status(3, 3)).isEmpty());
+        // unset counters equal zero.
+        assertTrue(ReplicaSetReconciler.diffStatus(new V1ReplicaSetStatus(), status(0, 0)).isEmpty());
+        assertTrue(ReplicaSetReconciler.diffStatus(null, status(0, 0)).isEmpty());
+    }
+
+    @Test
+    public void testDiffStatusWithChangedCounter() {
+        Map<String, Object> patch = ReplicaSetReconciler.diffStatus(status(3, 2), status(3, 3));
+        assertEquals(Collections.singletonMap("readyReplicas", 3L), patch);
+    }
+
+    @Test
+    public void testDiffStatusIgnoresConditionTransitionTime() {
+        V1ReplicaSetStatus oldStatus = status(3, 3).addConditionsItem(
+                replicaFailure("FailedCreate", OffsetDateTime.parse("2020-10-01T00:00:00Z")));
+        V1ReplicaSetStatus newStatus = status(3, 3).addConditionsItem(
+                replicaFailure("FailedCreate", OffsetDateTime.parse("2020-10-01T00:05:00Z")));
+        assertTrue(ReplicaSetReconciler.diffStatus(oldStatus, newStatus).isEmpty());
+    }
+
+    @Test
+    public void testDiffStatusWithChangedCondition() {
+        V1ReplicaSetStatus oldStatus = status(3, 3).addConditionsItem(
+                replicaFailure("FailedCreate", OffsetDateTime.parse("2020-10-01T00:00:00Z")));
+        V1ReplicaSetStatus newStatus = status(3, 3).addConditionsItem(
+                replicaFailure("FailedDelete", OffsetDateTime.parse("2020-10-01T00:00:00Z")));
+        Map<String, Object> patch = ReplicaSetReconciler.diffStatus(oldStatus, newStatus);
+        assertEquals(Collections.singletonMap("conditions", newStatus.getConditions()), patch);
+    }
+
+    @Test
+    public void testDiffStatusWithRemovedCondition() {
+        V1ReplicaSetStatus oldStatus = status(3, 3).addConditionsItem(
+                replicaFailure("FailedCreate", OffsetDateTime.parse("2020-10-01T00:00:00Z")));
+        Map<String, Object> patch = ReplicaSetReconciler.diffStatus(oldStatus, status(3, 3));
+        // merge-patch replaces the list as a whole, an empty list clears it.
+        assertTrue(patch.containsKey("conditions"));
+        assertEquals(Collections.emptyList(), patch.get("conditions"));
+        assertFalse(patch.containsKey("readyReplicas"));
+    }
+
+    private static V1ReplicaSetStatus status(int replicas, int readyReplicas) {
+        return new V1ReplicaSetStatus()
+                .replicas(replicas)
+                .fullyLabeledReplicas(replicas)
+                .readyReplicas(readyReplicas)
+                .availableReplicas(readyReplicas)
+                .observedGeneration(1L);
+    }
+
+    private static V1ReplicaSetCondition replicaFailure(String reason, OffsetDateTime lastTransitionTime) {
+        return new V1ReplicaSetCondition()
+                .type("ReplicaFailure")
+                .status("True")
+                .reason(reason)
+                .message("pods \"rs-abcde\" is forbidden")
+                .lastTransitionTime(lastTransitionTime);
+    }
+
+    @Test
+    public void testPodUpdateFilter() {
+        // the change applied to the new pod, and whether the update passes the filter.
+        Map<String, Consumer<V1Pod>> relevant = new LinkedHashMap<>();
+        relevant.put("readiness flip", pod -> pod.getStatus().getConditions().get(0).status("False"));
+        relevant.put("phase change", pod -> pod.getStatus().phase("Failed"));
+        relevant.put("label change", pod -> pod.getMetadata().putLabelsItem("app", "other"));
+        relevant.put("owner change", pod -> pod.getMetadata().getOwnerReferences().get(0).uid("uid-rs-2"));
+        relevant.put("orphaned", pod -> pod.getMetadata().ownerReferences(null));
+        relevant.put("deletion", pod -> pod.getMetadata().deletionTimestamp(OffsetDateTime.parse("2020-10-01T00:00:00Z")));
+        Map<String, Consumer<V1Pod>> irrelevant = new LinkedHashMap<>();
+        irrelevant.put("container restart", pod -> pod.getStatus().getContainerStatuses().get(0).restartCount(1));
+        irrelevant.put("annotation change", pod -> pod.getMetadata().putAnnotationsItem("heartbeat", "1"));
+        for (Map.Entry<String, Consumer<V1Pod>> update : relevant.entrySet()) {
+            assertTrue(ReplicaSetReconciler.isRelevantPodUpdate(pod("1"), updated(pod("2"), update.getValue())), update.getKey());
+        }
+        for (Map.Entry<String, Consumer<V1Pod>> update : irrelevant.entrySet()) {
+            assertFalse(ReplicaSetReconciler.isRelevantPodUpdate(pod("1"), updated(pod("2"), update.getValue())), update.getKey());
+        }
+        // a periodic resync.
+        assertFalse(ReplicaSetReconciler.isRelevantPodUpdate(pod("1"), pod("1")));
+    }
+
+    @Test
+    public void testPodUpdateLane() {
+        assertEquals(Lane.HIGH, ReplicaSetReconciler.relevantPodUpdateLane(pod("1"),
+                updated(pod("2"), pod -> pod.getMetadata().deletionTimestamp(OffsetDateTime.parse("2020-10-01T00:00:00Z")))));
+        assertEquals(Lane.NORMAL, ReplicaSetReconciler.relevantPodUpdateLane(pod("1"),
+                updated(pod("2"), pod -> pod.getStatus().getConditions().get(0).status("False"))));
+        // the deletion was already observed.
+        assertEquals(Lane.NORMAL, ReplicaSetReconciler.relevantPodUpdateLane(
+                updated(pod("1"), pod -> pod.getMetadata().deletionTimestamp(OffsetDateTime.parse("2020-10-01T00:00:00Z"))),
+                updated(pod("2"), pod -> pod.getMetadata().deletionTimestamp(OffsetDateTime.parse("2020-10-01T00:00:00Z")))));
+    }
+
+    @Test
+    public void testReplicaSetUpdateLane() {
+        // the change applied to the new replicaset, and the lane it goes to.
+        Map<String, Consumer<V1ReplicaSet>> updates = new LinkedHashMap<>();
+        Map<String, Lane> lanes = new HashMap<>();
+        updates.put("spec.replicas change", rs -> rs.getSpec().replicas(5));
+        lanes.put("spec.replicas change", Lane.HIGH);
+        updates.put("generation change", rs -> rs.getMetadata().generation(2L));
+        lanes.put("generation change", Lane.HIGH);
+        updates.put("status change", rs -> rs.getStatus().readyReplicas(2));
+        lanes.put("status change", Lane.LOW);
+        updates.put("label change", rs -> rs.getMetadata().putLabelsItem("team", "other"));
+        lanes.put("label change", Lane.NORMAL);
+        updates.put("deletion", rs -> rs.getMetadata().deletionTimestamp(OffsetDateTime.parse("2020-10-01T00:00:00Z")));
+        lanes.put("deletion", Lane.NORMAL);
+        for (Map.Entry<String, Consumer<V1ReplicaSet>> update : updates.entrySet()) {
+            V1ReplicaSet newRs = replicaSet("2");
+            update.getValue().accept(newRs);
+            assertEquals(lanes.get(update.getKey()), ReplicaSetReconciler.replicaSetUpdateLane(replicaSet("1"), newRs), update.getKey());
+        }
+        // a periodic resync.
+        assertEquals(Lane.LOW, ReplicaSetReconciler.replicaSetUpdateLane(replicaSet("1"), replicaSet("1")));
+    }
+
+    @Test
+    public void testPodFormerOwner() {
+        V1Pod moved = updated(pod("2"), pod -> pod.getMetadata().getOwnerReferences().get(0).name("rs-2").uid("uid-rs-2"));
+        assertEquals(new Request("default", "rs-1"), ReplicaSetReconciler.podFormerOwner(pod("1"), moved));
+        V1Pod orphaned = updated(pod("2"), pod -> pod.getMetadata().ownerReferences(null));
+        assertEquals(new Request("default", "rs-1"), ReplicaSetReconciler.podFormerOwner(pod("1"), orphaned));
+        assertNull(ReplicaSetReconciler.podFormerOwner(pod("1"), updated(pod("2"), pod -> pod.getStatus().phase("Failed"))));
+        assertNull(ReplicaSetReconciler.podFormerOwner(orphaned, pod("3")));
+    }
+
+    @Test
+    public void testClaimPods() {
+        V1ReplicaSet rs = replicaSet("1");
+        PodSelector selector = PodSelector.compile(new V1LabelSelector().putMatchLabelsItem("app", "web"));
+        V1Pod owned = pod("1");
+        V1Pod orphan = updated(pod("1"), pod -> pod.getMetadata().name("orphan").ownerReferences(null));
+        V1Pod relabeled = updated(pod("1"), pod -> pod.getMetadata().name("relabeled").putLabelsItem("app", "db"));
+        V1Pod ownedByOther = updated(pod("1"), pod -> pod.getMetadata().name("owned-by-other")
+                .getOwnerReferences().get(0).name("rs-2").uid("uid-rs-2"));
+        V1Pod controlledByJob = updated(pod("1"), pod -> pod.getMetadata().name("controlled-by-job")
+                .getOwnerReferences().get(0).apiVersion("batch/v1").kind("Job").name("job-1").uid("uid-job-1"));
+        V1Pod deletedOrphan = updated(pod("1"), pod -> pod.getMetadata().name("deleted-orphan").ownerReferences(null)
+                .deletionTimestamp(OffsetDateTime.now()));
+        V1Pod unmatchedOrphan = updated(pod("1"), pod -> pod.getMetadata().name("unmatched-orphan").ownerReferences(null)
+                .putLabelsItem("app", "db"));
+        List<V1Pod> pods = new ArrayList<>();
+        Collections.addAll(pods, owned, orphan, relabeled, ownedByOther, controlledByJob, deletedOrphan, unmatchedOrphan);
+
+        List<V1Pod> adoptions = new ArrayList<>();
+        List<V1Pod> releases = new ArrayList<>();
+        List<V1Pod> claimed = ReplicaSetReconciler.claimPods(rs, selector, pods, adoptions, releases);
+        assertEquals(Collections.singletonList(owned), claimed);
+        assertEquals(Collections.singletonList(orphan), adoptions);
+        assertEquals(Collections.singletonList(relabeled), releases);
+    }
+
+    @Test
+    public void testClaimPodsOfDeletedReplicaSet() {
+        // a replicaset being deleted orphans its pods, neither adopting nor releasing any.
+        V1ReplicaSet rs = updated(replicaSet("1"), replicaSet -> replicaSet.getMetadata().deletionTimestamp(OffsetDateTime.now()));
+        PodSelector selector = PodSelector.compile(new V1LabelSelector().putMatchLabelsItem("app", "web"));
+        V1Pod owned = pod("1");
+        V1Pod orphan = updated(pod("1"), pod -> pod.getMetadata().name("orphan").ownerReferences(null));
+        V1Pod relabeled = updated(pod("1"), pod -> pod.getMetadata().name("relabeled").putLabelsItem("app", "db"));
+
+        List<V1Pod> adoptions = new ArrayList<>();
+        List<V1Pod> releases = new ArrayList<>();
+        List<V1Pod> claimed = ReplicaSetReconciler.claimPods(rs, selector, Arrays.asList(owned, orphan, relabeled), adoptions, releases);
+        assertEquals(Collections.singletonList(owned), claimed);
+        assertTrue(adoptions.isEmpty());
+        assertTrue(releases.isEmpty());
+    }
+
+    @Test
+    public void testAdoptionPatch() {
+        V1ReplicaSet rs = replicaSet("1");
+        V1OwnerReference ref = new V1OwnerReference()
+                .apiVersion("apps/v1")
+                .kind("ReplicaSet")
+                .name("rs-1")
+                .uid("uid-rs-1")
+                .controller(true)
+                .blockOwnerDeletion(true);
+
+        V1Pod orphan = updated(pod("7"), pod -> pod.getMetadata().ownerReferences(null));
+        assertEquals(Arrays.asList(
+                patchOp("test", "/metadata/uid", "uid-pod-1"),
+                patchOp("test", "/metadata/resourceVersion", "7"),
+                patchOp("add", "/metadata/ownerReferences", Collections.singletonList(ref))),
+                ReplicaSetReconciler.adoptionPatch(rs, orphan));
+
+        // appends to the references of other, non-controller owners.
+        V1Pod referenced = updated(pod("7"), pod -> pod.getMetadata().getOwnerReferences().get(0)
+                .kind("ConfigMap").apiVersion("v1").name("config").uid("uid-config").controller(false));
+        assertEquals(Arrays.asList(
+                patchOp("test", "/metadata/uid", "uid-pod-1"),
+                patchOp("add", "/metadata/ownerReferences/-", ref)),
+                ReplicaSetReconciler.adoptionPatch(rs, referenced));
+    }
+
+    @Test
+    public void testReleasePatch() {
+        V1ReplicaSet rs = replicaSet("1");
+        V1Pod owned = updated(pod("7"), pod -> pod.getMetadata().getOwnerReferences().add(0, new V1OwnerReference()
+                .apiVersion("v1").kind("ConfigMap").name("config").uid("uid-config")));
+        Map<String, Object> remove = new LinkedHashMap<>();
+        remove.put("op", "remove");
+        remove.put("path", "/metadata/ownerReferences/1");
+        assertEquals(Arrays.asList(
+                patchOp("test", "/metadata/uid", "uid-pod-1"),
+                patchOp("test", "/metadata/ownerReferences/1/uid", "uid-rs-1"),
+                remove),
+                ReplicaSetReconciler.releasePatch(rs, owned));
+    }
+
+    private static Map<String, Object> patchOp(String op, String path, Object value) {
+        Map<String, Object> patchOp = new LinkedHashMap<>();
+        patchOp.put("op", op);
+        patchOp.put("path", path);
+        patchOp.put("value", value);
+        return patchOp;
+    }
+
+    private static <T> T updated(T object, Consumer<T> update) {
+        update.accept(object);
+        return object;
+    }
+
+    private static V1Pod pod(String resourceVersion) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put("app", "web");
+        List<V1OwnerReference> ownerReferences = new ArrayList<>();
+        ownerReferences.add(new V1OwnerReference()
+                .apiVersion("apps/v1")
+                .kind("ReplicaSet")
+                .name("rs-1")
+                .uid("uid-rs-1")
+                .controller(true));
+        return new V1Pod()
+                .metadata(new V1ObjectMeta()
+                        .namespace("default")
+                        .name("pod-1")
+                        .uid("uid-pod-1")
+                        .resourceVersion(resourceVersion)
+                        .labels(labels)
+                        .ownerReferences(ownerReferences))
+                .spec(new V1PodSpec().nodeName("node-1"))
+                .status(new V1PodStatus()
+                        .phase("Running")
+                        .addConditionsItem(new V1PodCondition().type("Ready").status("True"))
+                        .addContainerStatusesItem(new V1ContainerStatus().name("app").restartCount(0)));
+    }
+
+    private static V1ReplicaSet replicaSet(String resourceVersion) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put("app", "web");
+        return new V1ReplicaSet()
+                .metadata(new V1ObjectMeta()
+                        .namespace("default")
+                        .name("rs-1")
+                        .uid("uid-rs-1")
+                        .generation(1L)
+                        .resourceVersion(resourceVersion)
+                        .labels(labels))
+                .spec(new V1ReplicaSetSpec().replicas(3))
+                .status(status(3, 3));
+    }
+}
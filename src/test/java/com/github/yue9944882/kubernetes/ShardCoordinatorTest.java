@@ -0,0 +1,423 @@
+package com.github.yue9944882.kubernetes;
+
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.JSON;
+import io.kubernetes.client.openapi.models.V1DeleteOptions;
+import io.kubernetes.client.openapi.models.V1Lease;
+import io.kubernetes.client.openapi.models.V1LeaseList;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Preconditions;
+import io.kubernetes.client.openapi.models.V1ReplicaSet;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardCoordinatorTest {
+
+    private static final int KEYS = 3000;
+
+    private static final Duration LEASE_DURATION = Duration.ofSeconds(15);
+
+    private static final Duration RENEW_PERIOD = Duration.ofSeconds(5);
+
+    private static final List<V1ReplicaSet> REPLICA_SETS = new ArrayList<>();
+
+    static {
+        for (int i = 0; i < 300; i++) {
+            REPLICA_SETS.add(newReplicaSet("rs-" + i));
+        }
+    }
+
+    // the local clock shared by the coordinators, advanced by the test.
+    private final AtomicLong clock = new AtomicLong();
+
+    private final FakeLeases leases = new FakeLeases();
+
+    private final ApiClient apiClient = new ApiClient();
+
+    {
+        apiClient.setBasePath("http://fake-apiserver.invalid");
+        apiClient.setHttpClient(apiClient.getHttpClient().newBuilder().addInterceptor(leases).build());
+    }
+
+    @Test
+    public void testOwnerIsDeterministic() {
+        List<String> members = Arrays.asList("a", "b", "c");
+        List<String> reordered = Arrays.asList("c", "a", "b");
+        for (int i = 0; i < KEYS; i++) {
+            String key = "default/rs-" + i;
+            String owner = ShardCoordinator.owner(members, key);
+            assertTrue(members.contains(owner));
+            // the owner doesn't depend on the order the leases were listed in.
+            assertEquals(owner, ShardCoordinator.owner(reordered, key));
+        }
+        assertNull(ShardCoordinator.owner(Collections.emptyList(), "default/rs-0"));
+    }
+
+    @Test
+    public void testKeysAreSpreadAcrossMembers() {
+        List<String> members = Arrays.asList("a", "b", "c");
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            owned.merge(ShardCoordinator.owner(members, "default/rs-" + i), 1, Integer::sum);
+        }
+        for (String member : members) {
+            assertTrue(owned.get(member) > KEYS / 4, member + " owns " + owned.get(member));
+        }
+    }
+
+    // a member leaving only hands over its own keys, the other members keep theirs.
+    @Test
+    public void testRemovingMemberOnlyMovesItsKeys() {
+        List<String> before = Arrays.asList("a", "b", "c");
+        List<String> after = Arrays.asList("a", "b");
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "default/rs-" + i;
+            String owner = ShardCoordinator.owner(before, key);
+            if (owner.equals("c")) {
+                moved++;
+            } else {
+                assertEquals(owner, ShardCoordinator.owner(after, key));
+            }
+        }
+        assertTrue(moved > 0);
+    }
+
+    // a member joining only takes over keys, the keys don't move between the other members.
+    @Test
+    public void testAddingMemberOnlyMovesKeysToIt() {
+        List<String> before = Arrays.asList("a", "b", "c");
+        List<String> after = Arrays.asList("a", "b", "c", "d");
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "default/rs-" + i;
+            String owner = ShardCoordinator.owner(after, key);
+            if (owner.equals("d")) {
+                moved++;
+            } else {
+                assertEquals(ShardCoordinator.owner(before, key), owner);
+            }
+        }
+        assertTrue(moved > KEYS / 8, "moved " + moved);
+    }
+
+    @Test
+    public void testOwnsEverythingIfDisabled() {
+        ShardCoordinator coordinator = newCoordinator(false);
+        assertTrue(coordinator.owns(newReplicaSet("rs-0")));
+    }
+
+    // the other members may have taken over before the first renewal.
+    @Test
+    public void testOwnsNothingBeforeFirstRenewal() {
+        ShardCoordinator coordinator = newCoordinator(true);
+        for (int i = 0; i < 100; i++) {
+            assertFalse(coordinator.owns(newReplicaSet("rs-" + i)));
+        }
+    }
+
+    @Test
+    public void testJoin() {
+        ShardCoordinator a = newCoordinator("a");
+        ShardCoordinator b = newCoordinator("b");
+        List<ShardCoordinator> members = Arrays.asList(a, b);
+        renewRounds(3, members, members);
+        assertFullyOwned(members);
+
+        ShardCoordinator c = newCoordinator("c");
+        List<ShardCoordinator> all = Arrays.asList(a, b, c);
+        // the joining member renews first, last and in between the others.
+        renewRounds(3, Arrays.asList(c, a, b), all);
+        assertFullyOwned(all);
+        ShardCoordinator d = newCoordinator("d");
+        List<ShardCoordinator> four = Arrays.asList(a, b, c, d);
+        renewRounds(3, Arrays.asList(a, d, b, c), four);
+        assertFullyOwned(four);
+        for (ShardCoordinator member : four) {
+            assertEquals(4, member.getMemberCount());
+        }
+    }
+
+    @Test
+    public void testGracefulLeave() {
+        ShardCoordinator a = newCoordinator("a");
+        ShardCoordinator b = newCoordinator("b");
+        ShardCoordinator c = newCoordinator("c");
+        List<ShardCoordinator> all = Arrays.asList(a, b, c);
+        renewRounds(3, all, all);
+        assertFullyOwned(all);
+
+        c.stop();
+        assertFalse(leases.exists("replicaset-controller-c"));
+        assertOwnsNothing(c);
+        assertAtMostOneOwner(all);
+        // the others take over without waiting for the lease to expire.
+        renewRounds(2, Arrays.asList(a, b), all);
+        assertFullyOwned(Arrays.asList(a, b));
+        assertOwnsNothing(c);
+    }
+
+    @Test
+    public void testCrash() {
+        ShardCoordinator a = newCoordinator("a");
+        ShardCoordinator b = newCoordinator("b");
+        ShardCoordinator c = newCoordinator("c");
+        List<ShardCoordinator> all = Arrays.asList(a, b, c);
+        renewRounds(3, all, all);
+        assertFullyOwned(all);
+
+        // c stops renewing, but keeps answering owns() as if it were cut off from the api-server.
+        renewRounds(7, Arrays.asList(a, b), all);
+        assertOwnsNothing(c);
+        assertFullyOwned(Arrays.asList(a, b));
+        assertEquals(2, a.getMemberCount());
+
+        // the lease is deleted once expired for several lease durations.
+        assertTrue(leases.exists("replicaset-controller-c"));
+        int expired = (int) (ShardCoordinator.EXPIRED_LEASE_DURATIONS * LEASE_DURATION.toNanos() / RENEW_PERIOD.toNanos());
+        renewRounds(expired, Arrays.asList(a, b), all);
+        assertFalse(leases.exists("replicaset-controller-c"));
+        assertFullyOwned(Arrays.asList(a, b));
+    }
+
+    // a member cut off for longer than the lease duration must not resume owning the keys of the
+    // membership agreed upon before, which the others have taken over meanwhile.
+    @Test
+    public void testResumeAfterLapse() {
+        ShardCoordinator a = newCoordinator("a");
+        ShardCoordinator b = newCoordinator("b");
+        ShardCoordinator c = newCoordinator("c");
+        List<ShardCoordinator> all = Arrays.asList(a, b, c);
+        renewRounds(3, all, all);
+        renewRounds(5, Arrays.asList(a, b), all);
+        assertFullyOwned(Arrays.asList(a, b));
+
+        AtomicInteger rebalances = new AtomicInteger();
+        c.renew(rebalances::incrementAndGet);
+        assertAtMostOneOwner(all);
+        assertEquals(1, rebalances.get());
+        renewRounds(3, Arrays.asList(a, b, c), all);
+        assertFullyOwned(all);
+    }
+
+    // the replicasets dequeued while the ownership lapsed were dropped, regaining the lease must
+    // enqueue them again even if the membership didn't change meanwhile.
+    @Test
+    public void testRebalanceWhenLeaseRegained() {
+        ShardCoordinator a = newCoordinator("a");
+        AtomicInteger rebalances = new AtomicInteger();
+        a.renew(rebalances::incrementAndGet);
+        assertEquals(1, rebalances.get());
+        clock.addAndGet(RENEW_PERIOD.toNanos());
+        a.renew(rebalances::incrementAndGet);
+        // unchanged.
+        assertEquals(1, rebalances.get());
+
+        clock.addAndGet(LEASE_DURATION.toNanos());
+        assertOwnsNothing(a);
+        a.renew(rebalances::incrementAndGet);
+        assertEquals(2, rebalances.get());
+        assertFullyOwned(Collections.singletonList(a));
+    }
+
+    // advances the clock by a renew period before each round, checking after every single renewal.
+    private void renewRounds(int rounds, List<ShardCoordinator> renewing, List<ShardCoordinator> all) {
+        for (int i = 0; i < rounds; i++) {
+            clock.addAndGet(RENEW_PERIOD.toNanos());
+            for (ShardCoordinator coordinator : renewing) {
+                coordinator.renew(() -> {
+                });
+                assertAtMostOneOwner(all);
+            }
+        }
+    }
+
+    private static void assertAtMostOneOwner(List<ShardCoordinator> coordinators) {
+        for (V1ReplicaSet rs : REPLICA_SETS) {
+            List<String> owners = owners(coordinators, rs);
+            assertTrue(owners.size() <= 1, rs.getMetadata().getName() + " owned by " + owners);
+        }
+    }
+
+    private static void assertFullyOwned(List<ShardCoordinator> coordinators) {
+        Map<String, Integer> owned = new HashMap<>();
+        for (V1ReplicaSet rs : REPLICA_SETS) {
+            List<String> owners = owners(coordinators, rs);
+            assertEquals(1, owners.size(), rs.getMetadata().getName() + " owned by " + owners);
+            owned.merge(owners.get(0), 1, Integer::sum);
+        }
+        assertEquals(coordinators.size(), owned.size(), "owned " + owned);
+    }
+
+    private static void assertOwnsNothing(ShardCoordinator coordinator) {
+        for (V1ReplicaSet rs : REPLICA_SETS) {
+            assertFalse(coordinator.owns(rs), rs.getMetadata().getName());
+        }
+    }
+
+    private static List<String> owners(List<ShardCoordinator> coordinators, V1ReplicaSet rs) {
+        List<String> owners = new ArrayList<>();
+        for (ShardCoordinator coordinator : coordinators) {
+            if (coordinator.owns(rs)) {
+                owners.add(coordinator.getIdentity());
+            }
+        }
+        return owners;
+    }
+
+    private ShardCoordinator newCoordinator(String identity) {
+        return new ShardCoordinator(
+                true,
+                apiClient,
+                "default",
+                "replicaset-controller",
+                identity,
+                LEASE_DURATION,
+                RENEW_PERIOD,
+                clock::get);
+    }
+
+    private static ShardCoordinator newCoordinator(boolean enabled) {
+        return new ShardCoordinator(
+                enabled,
+                new ApiClient(),
+                "default",
+                "replicaset-controller",
+                "a",
+                LEASE_DURATION,
+                RENEW_PERIOD);
+    }
+
+    private static V1ReplicaSet newReplicaSet(String name) {
+        return new V1ReplicaSet().metadata(new V1ObjectMeta()
+                .namespace("default")
+                .name(name)
+                .uid(name + "-uid"));
+    }
+
+    // the leases of a namespace, answering the requests of the coordination api from memory. like the
+    // api-server, a replace or a delete with a stale resource-version fails with a conflict.
+    private static class FakeLeases implements Interceptor {
+
+        private static final Pattern LEASES_PATH = Pattern.compile(
+                "^/apis/coordination.k8s.io/v1/namespaces/([^/]+)/leases(?:/([^/]+))?$");
+
+        private final JSON json = new JSON();
+
+        private final Map<String, V1Lease> leases = new TreeMap<>();
+
+        private long resourceVersion = 0;
+
+        private synchronized boolean exists(String name) {
+            return leases.containsKey(name);
+        }
+
+        @Override
+        public synchronized Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            Matcher path = LEASES_PATH.matcher(request.url().encodedPath());
+            if (!path.matches()) {
+                return status(request, 404, "NotFound");
+            }
+            String name = path.group(2);
+            V1Lease existing = name == null ? null : leases.get(name);
+            switch (request.method()) {
+                case "GET":
+                    return respond(request, 200, json.serialize(new V1LeaseList().items(new ArrayList<>(leases.values()))));
+                case "POST": {
+                    V1Lease lease = json.deserialize(body(request), V1Lease.class);
+                    if (leases.containsKey(lease.getMetadata().getName())) {
+                        return status(request, 409, "AlreadyExists");
+                    }
+                    lease.getMetadata()
+                            .uid(UUID.randomUUID().toString())
+                            .resourceVersion(String.valueOf(++resourceVersion));
+                    leases.put(lease.getMetadata().getName(), lease);
+                    return respond(request, 201, json.serialize(lease));
+                }
+                case "PUT": {
+                    V1Lease lease = json.deserialize(body(request), V1Lease.class);
+                    if (existing == null) {
+                        return status(request, 404, "NotFound");
+                    }
+                    if (!existing.getMetadata().getResourceVersion().equals(lease.getMetadata().getResourceVersion())) {
+                        return status(request, 409, "Conflict");
+                    }
+                    lease.getMetadata()
+                            .uid(existing.getMetadata().getUid())
+                            .resourceVersion(String.valueOf(++resourceVersion));
+                    leases.put(name, lease);
+                    return respond(request, 200, json.serialize(lease));
+                }
+                case "DELETE": {
+                    if (existing == null) {
+                        return status(request, 404, "NotFound");
+                    }
+                    String body = body(request);
+                    V1Preconditions preconditions = body.isEmpty()
+                            ? null
+                            : json.<V1DeleteOptions>deserialize(body, V1DeleteOptions.class).getPreconditions();
+                    if (preconditions != null
+                            && (preconditions.getUid() != null && !preconditions.getUid().equals(existing.getMetadata().getUid())
+                            || preconditions.getResourceVersion() != null && !preconditions.getResourceVersion().equals(existing.getMetadata().getResourceVersion()))) {
+                        return status(request, 409, "Conflict");
+                    }
+                    leases.remove(name);
+                    return status(request, 200, "Success");
+                }
+                default:
+                    return status(request, 405, "MethodNotAllowed");
+            }
+        }
+
+        private static String body(Request request) throws IOException {
+            if (request.body() == null) {
+                return "";
+            }
+            Buffer buffer = new Buffer();
+            request.body().writeTo(buffer);
+            return buffer.readUtf8();
+        }
+
+        private static Response status(Request request, int code, String reason) {
+            return respond(request, code, "{\"kind\":\"Status\",\"apiVersion\":\"v1\",\"metadata\":{},\"status\":\""
+                    + (code < 300 ? "Success" : "Failure") + "\",\"reason\":\"" + reason + "\",\"code\":" + code + "}");
+        }
+
+        private static Response respond(Request request, int code, String body) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .message(String.valueOf(code))
+                    .body(ResponseBody.create(MediaType.parse("application/json"), body))
+                    .build();
+        }
+    }
+}